@@ -11,10 +11,13 @@
 #include <unistd.h>
 #include <stdio.h>
 #include <stdlib.h>
+#include <string.h>
 #include <getopt.h>
 #include <fcntl.h>
 #include <sys/ioctl.h>
 #include <sys/time.h>
+#include <sys/select.h>
+#include <time.h>
 #include <linux/types.h>
 #include <linux/spi/spidev.h>
 
@@ -44,12 +47,74 @@ static uint8_t bits = 8;
 static uint32_t speed = 200000;
 static uint16_t delay;
 
-static void matrixwrite(int fd, unsigned char max_address, unsigned char max_data)
+/**
+ * The SPI devices are opened (and initialized) the first time they're used
+ * and stay open until close_devices() is called.
+ */
+static int fd0 = -1;
+static int fd1 = -1;
+
+/**
+ * Shadow copy of the MAX7221 registers per device, -1 when the register value is unknown.
+ * Only the registers that change are written to the SPI bus.
+ */
+#define REGISTERS 16
+
+static int shadow0[REGISTERS];
+static int shadow1[REGISTERS];
+
+// Rewrite all the registers every 10 seconds (pipe mode) to recover from glitches
+#define REFRESH_SECONDS 10
+
+static void forget(int *shadow)
+{
+	int reg;
+
+	for (reg = 0; reg < REGISTERS; reg++) {
+		shadow[reg] = -1;
+	}
+}
+
+static int *shadow_of(int fd)
+{
+	if (fd >= 0 && fd == fd0) {
+		return shadow0;
+	} else if (fd >= 0 && fd == fd1) {
+		return shadow1;
+	}
+	return NULL;
+}
+
+static void spiwrite(int fd, unsigned char max_address, unsigned char max_data)
 {
    uint8_t tx[] = { max_address, max_data, };
    write(fd, tx, 2);
 }
 
+static void matrixwrite(int fd, unsigned char max_address, unsigned char max_data)
+{
+   int *shadow = shadow_of(fd);
+
+   if (shadow != NULL && shadow[max_address & 0x0F] == max_data) {
+      return;
+   }
+
+   spiwrite(fd, max_address, max_data);
+
+   if (shadow != NULL) {
+      shadow[max_address & 0x0F] = max_data;
+   }
+}
+
+/**
+ * Write a (decoded) digit, -z and -x switch the decode mode off so make sure it's on again.
+ */
+static void digitwrite(int fd, unsigned char max_address, unsigned char max_data)
+{
+   matrixwrite(fd, 0x09, 0xFF); // Decode mode (on!)
+   matrixwrite(fd, max_address, max_data);
+}
+
 static void initspi(int fd)
 {
    int ret = 0;
@@ -82,10 +147,10 @@ static void initspi(int fd)
       pabort("can't get max speed hz");
 
 	// Initialize Matrix
-	matrixwrite(fd, 0x0C, 0x01); // Normal operation
-	matrixwrite(fd, 0x0B, 0x07); // Scan Limit (all digits)
-	matrixwrite(fd, 0x0A, 0x07); // Intensity
-	matrixwrite(fd, 0x09, 0xFF); // Decode mode (on!)
+	spiwrite(fd, 0x0C, 0x01); // Normal operation
+	spiwrite(fd, 0x0B, 0x07); // Scan Limit (all digits)
+	spiwrite(fd, 0x0A, 0x07); // Intensity
+	spiwrite(fd, 0x09, 0xFF); // Decode mode (on!)
 }
 
 void led_counter(int fd, int delay)
@@ -132,6 +197,7 @@ void usage(void)
 	printf(" -k mmss (full time excluding 24 secs)\n");
 	printf(" -m mm (minutes)\n");
 	printf(" -s ss (seconds)\n");
+	printf(" -e sst (seconds and tenths, final minute)\n");
 	printf(" -t tt (24 seconds)\n");
 	printf(" -q n (quarter 1..4)\n");
 	printf(" -a n (foul team A 0..5)\n");
@@ -139,6 +205,7 @@ void usage(void)
 	printf(" -f 123456789012345 (set full scoreboard)\n");
 	printf(" -z clear all leds\n");
 	printf(" -x test\n");
+	printf(" -p pipe mode, read the options from stdin (one per line)\n");
 	printf(" \n");
 	printf("Application developed by Stephan Janssen (sja@devoxx.com)\n");
 	printf("Sept 2013 - v0.1.1\n");
@@ -146,7 +213,123 @@ void usage(void)
 	exit (8);
 }
 
-int main(int argc, char *argv[])
+static int open_device(const char *device)
+{
+	int fd = open(device, O_RDWR);
+
+	if (fd < 0) {
+		pabort("can't open device");
+	}
+
+	initspi(fd);
+
+	return fd;
+}
+
+static int spi0(void)
+{
+	if (fd0 < 0) {
+		fd0 = open_device(device0);
+		forget(shadow0);
+		shadow0[0x09] = 0xFF;
+	}
+	return fd0;
+}
+
+static int spi1(void)
+{
+	if (fd1 < 0) {
+		fd1 = open_device(device1);
+		forget(shadow1);
+		shadow1[0x09] = 0xFF;
+	}
+	return fd1;
+}
+
+static void close_devices(void)
+{
+	if (fd0 >= 0) {
+		close(fd0);
+		fd0 = -1;
+	}
+
+	if (fd1 >= 0) {
+		close(fd1);
+		fd1 = -1;
+	}
+}
+
+/**
+ * The register map of the scoreboard fields, shared by the single options and the full scoreboard (-f).
+ */
+static void show_home(unsigned char score1, unsigned char score2, unsigned char score3)
+{
+	digitwrite(spi1(), 2, score2);
+	digitwrite(spi1(), 3, score3);
+
+	if (score1 == '1') {
+		digitwrite(spi0(), 4, score1);
+	} else {
+		digitwrite(spi0(), 4, '6');
+	}
+}
+
+static void show_visitors(unsigned char score1, unsigned char score2, unsigned char score3)
+{
+	digitwrite(spi1(), 5, score2);
+	digitwrite(spi1(), 6, score3);
+
+	if (score1 == '1') {
+		digitwrite(spi0(), 5, score1);
+	} else {
+		digitwrite(spi0(), 5, '6');
+	}
+}
+
+static void show_minutes(unsigned char minute1, unsigned char minute2)
+{
+	digitwrite(spi1(), 1, minute1);
+	digitwrite(spi1(), 4, minute2);
+}
+
+static void show_seconds(unsigned char seconds1, unsigned char seconds2)
+{
+	digitwrite(spi0(), 6, seconds1);
+	digitwrite(spi0(), 7, seconds2);
+}
+
+/**
+ * The final minute is shown in tenths of a second as "ss.t" on the clock digits.
+ */
+static void show_tenths(unsigned char seconds1, unsigned char seconds2, unsigned char tenth)
+{
+	digitwrite(spi1(), 1, seconds1);
+	digitwrite(spi1(), 4, seconds2 | 0x80);	// decimal point
+	digitwrite(spi0(), 6, tenth);
+	digitwrite(spi0(), 7, 0x0F);			// blank
+}
+
+static void show_quarter(unsigned char quarter)
+{
+	digitwrite(spi0(), 2, quarter);
+}
+
+static void show_fouls_home(unsigned char foul)
+{
+	digitwrite(spi0(), 1, foul);
+}
+
+static void show_fouls_visitors(unsigned char foul)
+{
+	digitwrite(spi0(), 3, foul);
+}
+
+/**
+ * Execute one option, for example -h012
+ *
+ * Returns 0 when ok, -1 for an unknown option and -2 for a wrong value.
+ */
+static int execute(const char *arg)
 {
 	unsigned char score1;
 	unsigned char score2;
@@ -163,398 +346,328 @@ int main(int argc, char *argv[])
 	unsigned char twemtyfour1;
 	unsigned char twemtyfour2;
 
-	unsigned char clock;
-
 	unsigned char minute1;
 	unsigned char minute2;
 
 	unsigned char seconds1;
 	unsigned char seconds2;
+	unsigned char tenth;
 
 	unsigned char quarter;
 	unsigned char foul;
 	unsigned char foulA;
 	unsigned char foulB;
 
-	int fd0;
-	int fd1;
-
-	if (argc == 1) {
-	    usage();
-	    exit(0);
-	}
-
-	while ((argc > 1) && (argv[1][0] == '-'))
+	switch (arg[1])
 	{
-		switch (argv[1][1])
-		{
-			case 'h':					// score home
-				if (sscanf(&argv[1][2], "%c", &score1) != 1) {
-					printf("Wrong -hXnn value, failed.\n");
-					exit(-2);
-				} else if (sscanf(&argv[1][3], "%c", &score2) != 1) {
-					printf("Wrong -hnXn value, failed.\n");
-					exit(-2);
-				} else if (sscanf(&argv[1][4], "%c", &score3) != 1) {
-					printf("Wrong -hnnX value, failed.\n");
-					exit(-2);
-				}
-
-				fd1 = open(device1, O_RDWR);
-
-			    if (fd1 < 0) {
-      				pabort("can't open device");
-                }
-
-   				initspi(fd1);
-
-				matrixwrite(fd1, 2, score2);
-				matrixwrite(fd1, 3, score3);
-
-				close(fd1);
-
-                fd0 = open(device0, O_RDWR);
-                if (fd0 < 0) {
-                    pabort("can't open device");
-                }
-
-                initspi(fd0);
-
-                if (score1 == '1') {
-                    matrixwrite(fd0, 4, score1);
-                } else {
-                    matrixwrite(fd0, 4, '6');
-                }
-
-				close(fd0);
-
-				break;
-
-			case 'v':					// score visitors
-				if (sscanf(&argv[1][2], "%c", &score1) != 1) {
-					printf("Wrong -vXnn value, failed.\n");
-					exit(-2);
-				} else if (sscanf(&argv[1][3], "%c", &score2) != 1) {
-					printf("Wrong -vnXn value, failed.\n");
-					exit(-2);
-				} else if (sscanf(&argv[1][4], "%c", &score3) != 1) {
-					printf("Wrong -vnnX value, failed.\n");
-					exit(-2);
-				}
-
-				fd1 = open(device1, O_RDWR);
-			    if (fd1 < 0) {
-      				pabort("can't open device");
-                }
-
-   				initspi(fd1);
-
-				matrixwrite(fd1, 5, score2);
-				matrixwrite(fd1, 6, score3);
-
-				close(fd1);
-
-                fd0 = open(device0, O_RDWR);
-                if (fd0 < 0) {
-                    pabort("can't open device");
-                }
-
-                initspi(fd0);
-                if (score1 == '1') {
-                    matrixwrite(fd0, 5, score1);
-                } else {
-                    matrixwrite(fd0, 5, '6');
-                }
-
-                close(fd0);
-				break;
-
-			case 'm':					// minutes
-				if (sscanf(&argv[1][2], "%c", &minute1) != 1) {
-					printf("Wrong -mXn value, failed.\n");
-					exit(-2);
-				} else if (sscanf(&argv[1][3], "%c", &minute2) != 1) {
-					printf("Wrong -mnX value, failed.\n");
-					exit(-2);
-				}
-
-				// printf("minutes : %c %c\n", minute1, minute2);
-
-				fd1 = open(device1, O_RDWR);
-			    if (fd1 < 0) {
-      				pabort("can't open device");
-                }
-
-   				initspi(fd1);
-
-				matrixwrite(fd1, 1, minute1);
-				matrixwrite(fd1, 4, minute2);
-
-				close(fd1);
-				break;
-
-			case 's':					// seconds
-				if (sscanf(&argv[1][2], "%c", &seconds1) != 1) {
-					printf("Wrong -sXn value, failed.\n");
-					exit(-2);
-				} else if (sscanf(&argv[1][3], "%c", &seconds2) != 1) {
-					printf("Wrong -snX value, failed.\n");
-					exit(-2);
-				}
-
-				fd0 = open(device0, O_RDWR);
-			    if (fd0 < 0) {
-      				pabort("can't open device");
-                }
-
-   				initspi(fd0);
-
-				matrixwrite(fd0, 6, seconds1);
-				matrixwrite(fd0, 7, seconds2);
-
-				close(fd0);
-				break;
+		case 'h':					// score home
+			if (sscanf(&arg[2], "%c", &score1) != 1) {
+				printf("Wrong -hXnn value, failed.\n");
+				return -2;
+			} else if (sscanf(&arg[3], "%c", &score2) != 1) {
+				printf("Wrong -hnXn value, failed.\n");
+				return -2;
+			} else if (sscanf(&arg[4], "%c", &score3) != 1) {
+				printf("Wrong -hnnX value, failed.\n");
+				return -2;
+			}
+
+			show_home(score1, score2, score3);
+			break;
+
+		case 'v':					// score visitors
+			if (sscanf(&arg[2], "%c", &score1) != 1) {
+				printf("Wrong -vXnn value, failed.\n");
+				return -2;
+			} else if (sscanf(&arg[3], "%c", &score2) != 1) {
+				printf("Wrong -vnXn value, failed.\n");
+				return -2;
+			} else if (sscanf(&arg[4], "%c", &score3) != 1) {
+				printf("Wrong -vnnX value, failed.\n");
+				return -2;
+			}
+
+			show_visitors(score1, score2, score3);
+			break;
+
+		case 'm':					// minutes
+			if (sscanf(&arg[2], "%c", &minute1) != 1) {
+				printf("Wrong -mXn value, failed.\n");
+				return -2;
+			} else if (sscanf(&arg[3], "%c", &minute2) != 1) {
+				printf("Wrong -mnX value, failed.\n");
+				return -2;
+			}
+
+			show_minutes(minute1, minute2);
+			break;
+
+		case 's':					// seconds
+			if (sscanf(&arg[2], "%c", &seconds1) != 1) {
+				printf("Wrong -sXn value, failed.\n");
+				return -2;
+			} else if (sscanf(&arg[3], "%c", &seconds2) != 1) {
+				printf("Wrong -snX value, failed.\n");
+				return -2;
+			}
+
+			show_seconds(seconds1, seconds2);
+			break;
+
+		case 'e':					// seconds and tenths
+			if (sscanf(&arg[2], "%c", &seconds1) != 1) {
+				printf("Wrong -eXnn value, failed.\n");
+				return -2;
+			} else if (sscanf(&arg[3], "%c", &seconds2) != 1) {
+				printf("Wrong -enXn value, failed.\n");
+				return -2;
+			} else if (sscanf(&arg[4], "%c", &tenth) != 1) {
+				printf("Wrong -ennX value, failed.\n");
+				return -2;
+			}
+
+			show_tenths(seconds1, seconds2, tenth);
+			break;
+
+		case 't':					// 24 seconds
+			if (sscanf(&arg[2], "%c", &twemtyfour1) != 1) {
+				printf("Wrong -tXn value, failed.\n");
+				return -2;
+			} else if (sscanf(&arg[3], "%c", &twemtyfour2) != 1) {
+				printf("Wrong -tnX value, failed.\n");
+				return -2;
+			}
+
+			digitwrite(spi1(), 7, twemtyfour1);
+			digitwrite(spi1(), 8, twemtyfour2);
+			break;
+
+		case 'q':					// quarter
+			if (sscanf(&arg[2], "%c", &quarter) != 1) {
+				printf("Wrong -qX value, failed.\n");
+				return -2;
+			}
+
+			show_quarter(quarter);
+			break;
+
+		case 'a':					// Fouls team A
+			if (sscanf(&arg[2], "%c", &foul) != 1) {
+				printf("Wrong -aX value, failed.\n");
+				return -2;
+			}
+
+			show_fouls_home(foul);
+			break;
+
+		case 'b':					// Fouls team B
+			if (sscanf(&arg[2], "%c", &foul) != 1) {
+				printf("Wrong -aX value, failed.\n");
+				return -2;
+			}
+
+			show_fouls_visitors(foul);
+			break;
+
+		case 'f':					// Full Scoreboard, for example -f120140103409591
+			if (strlen(arg) < 17) {
+				printf("Wrong -f value, failed.\n");
+				return -2;
+			}
+
+			// 1) Score Home (3 digits)
+			home1 = arg[2];
+			home2 = arg[3];
+			home3 = arg[4];
+
+			// 2) Score Visitors (3 digits)
+			visitors1 = arg[5];
+			visitors2 = arg[6];
+			visitors3 = arg[7];
+
+			// 3) # timeouts Home (1 digit)
+			// 4) # timeouts Visitors (1 digit)
+			// The timeouts are shown by the GPIO LEDs
+
+			// 5) # fouls Home (1 digit)
+			foulA = arg[10];
+
+			// 6) # fouls Visitors (1 digit)
+			foulB = arg[11];
+
+			// 7) minutes clock (2 digits)
+			minute1 = arg[12];
+			minute2 = arg[13];
+
+			// 8) seconds clock (2 digits)
+			seconds1 = arg[14];
+			seconds2 = arg[15];
+
+			// 9) quarter (1 digit)
+			quarter = arg[16];
+
+			show_fouls_home(foulA);
+			show_quarter(quarter);
+			show_fouls_visitors(foulB);
+			show_home(home1, home2, home3);
+			show_visitors(visitors1, visitors2, visitors3);
+			show_minutes(minute1, minute2);
+			show_seconds(seconds1, seconds2);
+			break;
+
+		case 'k':					// Full time excl. 24 seconds
+			if (sscanf(&arg[2], "%c", &minute1) != 1) {
+				printf("Wrong -fXnnnnn value, failed.\n");
+				return -2;
+			} else if (sscanf(&arg[3], "%c", &minute2) != 1) {
+				printf("Wrong -fnXnnnn value, failed.\n");
+				return -2;
+			} else if (sscanf(&arg[4], "%c", &seconds1) != 1) {
+				printf("Wrong -fnnXnnn value, failed.\n");
+				return -2;
+			} else if (sscanf(&arg[5], "%c", &seconds2) != 1) {
+				printf("Wrong -fnnnXnn value, failed.\n");
+				return -2;
+			}
+
+			show_minutes(minute1, minute2);
+			show_seconds(seconds1, seconds2);
+			break;
+
+		case 'z':					// clear all
+			all_leds_off(spi0());
+			all_leds_off(spi1());
+			break;
+
+		case 'x':					// test
+			all_leds_on(spi0());
+			all_leds_on(spi1());
+			break;
+
+		default:
+			printf("Wrong Argument: %s\n", arg);
+			return -1;
+	}
 
-			case 't':					// 24 seconds
-				if (sscanf(&argv[1][2], "%c", &twemtyfour1) != 1) {
-					printf("Wrong -tXn value, failed.\n");
-					exit(-2);
-				} else if (sscanf(&argv[1][3], "%c", &twemtyfour2) != 1) {
-					printf("Wrong -tnX value, failed.\n");
-					exit(-2);
-				}
+	return 0;
+}
 
-				fd1 = open(device1, O_RDWR);
-			    if (fd1 < 0) {
-      				pabort("can't open device");
-                }
+/**
+ * Initialize the device again and rewrite all the known registers, ignoring the shadow copy.
+ */
+static void refresh(int fd, int *shadow)
+{
+	int reg;
 
-   				initspi(fd1);
+	if (fd < 0) {
+		return;
+	}
 
-				matrixwrite(fd1, 7, twemtyfour1);
-				matrixwrite(fd1, 8, twemtyfour2);
+	initspi(fd);
 
-				close(fd1);
-				break;
+	for (reg = 1; reg < REGISTERS; reg++) {
+		if (shadow[reg] >= 0) {
+			spiwrite(fd, reg, shadow[reg]);
+		}
+	}
+}
 
-			case 'q':					// quarter
-				if (sscanf(&argv[1][2], "%c", &quarter) != 1) {
-					printf("Wrong -qX value, failed.\n");
-					exit(-2);
+/**
+ * Pipe mode, keeps the SPI devices open and executes every option read from stdin.
+ * Several options can be given on one line, separated by spaces.
+ * Only the changed registers are written, every REFRESH_SECONDS all of them are written again.
+ */
+static void pipe_mode(void)
+{
+	char line[256];
+	char *option;
+	int length = 0;
+	int ret;
+	int i;
+	time_t lastRefresh = time(NULL);
+	fd_set input;
+	struct timeval timeout;
+
+	while (1) {
+		FD_ZERO(&input);
+		FD_SET(STDIN_FILENO, &input);
+		timeout.tv_sec = 1;
+		timeout.tv_usec = 0;
+
+		ret = select(STDIN_FILENO + 1, &input, NULL, NULL, &timeout);
+
+		if (ret > 0) {
+			ret = read(STDIN_FILENO, &line[length], sizeof(line) - 1 - length);
+			if (ret <= 0) {
+				break;		// stdin closed
+			}
+			length += ret;
+
+			// Execute all the complete lines
+			for (i = 0; i < length; i++) {
+				if (line[i] == '\n') {
+					line[i] = '\0';
+
+					for (option = strtok(line, " \t\r"); option != NULL; option = strtok(NULL, " \t\r")) {
+						if (option[0] == '-') {
+							execute(option);
+						}
+					}
+
+					length -= i + 1;
+					memmove(line, &line[i + 1], length);
+					i = -1;
 				}
+			}
 
-				// printf("quarter : %c\n", quarter);
-
-				fd0 = open(device0, O_RDWR);
-			    if (fd0 < 0) {
-      				pabort("can't open device");
-                }
-
-   				initspi(fd0);
-
-				matrixwrite(fd0, 2, quarter);
-
-				close(fd0);
-				break;
+			// Drop a line that doesn't fit the buffer
+			if (length == sizeof(line) - 1) {
+				length = 0;
+			}
 
-			case 'a':					// Fouls team A
-				if (sscanf(&argv[1][2], "%c", &foul) != 1) {
-					printf("Wrong -aX value, failed.\n");
-					exit(-2);
-				}
-
-				fd0 = open(device0, O_RDWR);
-			    if (fd0 < 0) {
-      				pabort("can't open device");
-                }
+			fflush(stdout);
+		}
 
-   				initspi(fd0);
+		if (time(NULL) - lastRefresh >= REFRESH_SECONDS) {
+			refresh(fd0, shadow0);
+			refresh(fd1, shadow1);
+			lastRefresh = time(NULL);
+		}
+	}
 
-				matrixwrite(fd0, 1, foul);
+	close_devices();
+}
 
-				close(fd0);
-				break;
+int main(int argc, char *argv[])
+{
+	int ret;
 
-			case 'b':					// Fouls team B
-				if (sscanf(&argv[1][2], "%c", &foul) != 1) {
-					printf("Wrong -aX value, failed.\n");
-					exit(-2);
-				}
+	if (argc == 1) {
+	    usage();
+	    exit(0);
+	}
 
-				fd0 = open(device0, O_RDWR);
-			    if (fd0 < 0) {
-      				pabort("can't open device");
-                }
-
-   				initspi(fd0);
-
-				matrixwrite(fd0, 3, foul);
-
-				close(fd0);
-				break;
-
-			case 'f':					// Full Scoreboard
-
-				fd0 = open(device0, O_RDWR);
-			    if (fd0 < 0) {
-      				pabort("can't open device");
-                }
-
-   				initspi(fd0);
-
-                // 1) Score Home (3 digits)
-                sscanf(&argv[1][2], "%c", &home1);
-                sscanf(&argv[1][3], "%c", &home2);
-                sscanf(&argv[1][4], "%c", &home3);
-
-                // 2) Score Visitors (3 digits)
-                sscanf(&argv[1][5], "%c", &visitors1);
-                sscanf(&argv[1][6], "%c", &visitors2);
-                sscanf(&argv[1][7], "%c", &visitors3);
-
-                // 3) # timeouts Home (1 digit)
-                // 4) # timeouts Visitors (1 digit)
-
-                // 5) # fouls Home (1 digit)
-                sscanf(&argv[1][10], "%c", &foulA);
-
-                // 6) # fouls Visitors (1 digit)
-                sscanf(&argv[1][11], "%c", &foulB);
-
-                // 7) minutes clock (2 digits)
-                sscanf(&argv[1][12], "%c", &minute1);
-                sscanf(&argv[1][13], "%c", &minute2);
-
-                // 8) seconds clock (2 digits)
-                sscanf(&argv[1][14], "%c", &seconds1);
-                sscanf(&argv[1][15], "%c", &seconds2);
-
-                // 9) quarter (1 digit)
-                sscanf(&argv[1][16], "%c", &quarter);
-
-                matrixwrite(fd0, 1, foulA);      // Fouls A
-                matrixwrite(fd0, 2, quarter);   // Quarter
-                matrixwrite(fd0, 3, foulB);      // Fouls B
-				matrixwrite(fd0, 4, minute1);   // Minute 1
-				matrixwrite(fd0, 5, minute2);   // Minute 2
-				matrixwrite(fd0, 6, seconds1);  // Seconds 1
-				matrixwrite(fd0, 7, seconds2);  // Seconds 2
-
-				close(fd0);
-
-				fd1 = open(device1, O_RDWR);
-			    if (fd1 < 0) {
-      				pabort("can't open device");
-                }
-
-   				initspi(fd1);
-
-   				// Score
-				matrixwrite(fd1, 2, home2);
-				matrixwrite(fd1, 3, home3);
-				matrixwrite(fd1, 5, visitors2);
-				matrixwrite(fd1, 6, visitors3);
-
-                if (home1 == '1') {
-                    matrixwrite(fd1, 1, score1);
-                } else {
-                    matrixwrite(fd1, 0x09, 0x00); // Decode mode (off)
-                    matrixwrite(fd1, 1, 0x00);
-                }
-
-                if (visitors1 == '1') {
-				    matrixwrite(fd1, 4, visitors1);
-                } else {
-                    matrixwrite(fd1, 0x09, 0x00); // Decode mode (off)
-                    matrixwrite(fd1, 4, 0x00);
-                }
-
-				close(fd1);
-				break;
-
-			case 'k':					// Full time excl. 24 seconds
-				if (sscanf(&argv[1][2], "%c", &minute1) != 1) {
-					printf("Wrong -fXnnnnn value, failed.\n");
-					exit(-2);
-				} else if (sscanf(&argv[1][3], "%c", &minute2) != 1) {
-					printf("Wrong -fnXnnnn value, failed.\n");
-					exit(-2);
-				} else if (sscanf(&argv[1][4], "%c", &seconds1) != 1) {
-					printf("Wrong -fnnXnnn value, failed.\n");
-					exit(-2);
-				} else if (sscanf(&argv[1][5], "%c", &seconds2) != 1) {
-					printf("Wrong -fnnnXnn value, failed.\n");
-					exit(-2);
-				}
+	if (argv[1][0] == '-' && argv[1][1] == 'p') {
+		pipe_mode();
+		return 0;
+	}
 
-				fd1 = open(device1, O_RDWR);
-			    if (fd1 < 0) {
-      				pabort("can't open device");
-                }
-                initspi(fd1);
-				matrixwrite(fd1, 1, minute1);
-				matrixwrite(fd1, 4, minute2);
-                close(fd1);
-
-				fd0 = open(device0, O_RDWR);
-			    if (fd0 < 0) {
-      				pabort("can't open device");
-                }
-				initspi(fd0);
-                matrixwrite(fd0, 6, seconds1);
-				matrixwrite(fd0, 7, seconds2);
-
-				close(fd0);
-				break;
-
-			case 'z':					// clear all
-				fd0 = open(device0, O_RDWR);
-			    if (fd0 < 0) {
-      				pabort("can't open device");
-                }
-
-   				initspi(fd0);
-				all_leds_off(fd0);
-				close(fd0);
-
-				fd1 = open(device1, O_RDWR);
-			    if (fd1 < 0) {
-      				pabort("can't open device");
-                }
-
-   				initspi(fd1);
-				all_leds_off(fd1);
-				close(fd1);
-				break;
-
-			case 'x':					// test
-				fd0 = open(device0, O_RDWR);
-			    if (fd0 < 0) {
-      				pabort("can't open device");
-                }
-
-   				initspi(fd0);
-				all_leds_on(fd0);
-				close(fd0);
-
-				fd1 = open(device1, O_RDWR);
-			    if (fd1 < 0) {
-      				pabort("can't open device");
-                }
-
-   				initspi(fd1);
-				all_leds_on(fd1);
-				close(fd1);
-
-				break;
-
-			default:
-				printf("Wrong Argument: %s\n", argv[1]);
-				usage();
+	while ((argc > 1) && (argv[1][0] == '-'))
+	{
+		ret = execute(argv[1]);
+
+		if (ret == -1) {
+			close_devices();
+			usage();
+		} else if (ret == -2) {
+			close_devices();
+			exit(-2);
 		}
 
 		++argv;
 		--argc;
 	}
-   return;
+
+	close_devices();
+	return 0;
 }
@@ -0,0 +1,153 @@
+package org.janssen.scoreboard.controller;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one scheduler for the game, 24s and timeout clocks.
+ *
+ * Every clock registers the instant of its next tick, only the earliest deadline is scheduled
+ * on the executor. All the clocks which are due are ticked in one pass (in deadline order),
+ * when no clock is running nothing is scheduled at all.
+ *
+ * @author Stephan Janssen
+ */
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@Singleton
+public class ClockScheduler {
+
+    // The registered clocks and their next deadline (System.nanoTime() instant)
+    private final Map<ScheduledClock, Long> deadlines = new LinkedHashMap<ScheduledClock, Long>();
+
+    @Resource
+    private ManagedScheduledExecutorService ses;
+
+    private ScheduledFuture<?> future;
+
+    // The deadline the future has been scheduled for
+    private long wakeUpAt;
+
+    private long passes;
+
+    private final Runnable runner = new Runnable() {
+        @Override
+        public void run() {
+            runDueClocks();
+        }
+    };
+
+    @PreDestroy
+    public synchronized void destroy() {
+        deadlines.clear();
+        cancelFuture();
+    }
+
+    /**
+     * Tick the clock at the given instant, replaces the previous deadline of the clock.
+     *
+     * @param clock    the clock
+     * @param deadline the System.nanoTime() instant
+     */
+    public synchronized void schedule(final ScheduledClock clock, final long deadline) {
+        deadlines.put(clock, deadline);
+        reschedule();
+    }
+
+    /**
+     * @param clock the clock which doesn't need to tick anymore
+     */
+    public synchronized void cancel(final ScheduledClock clock) {
+        if (deadlines.remove(clock) != null) {
+            reschedule();
+        }
+    }
+
+    public synchronized boolean isIdle() {
+        return deadlines.isEmpty();
+    }
+
+    /**
+     * @return the number of times the scheduler woke up
+     */
+    public synchronized long getPasses() {
+        return passes;
+    }
+
+    void runDueClocks() {
+        final long now = MonotonicClock.now();
+        final List<Map.Entry<ScheduledClock, Long>> due = new ArrayList<Map.Entry<ScheduledClock, Long>>();
+
+        synchronized (this) {
+            future = null;
+            passes++;
+
+            final Iterator<Map.Entry<ScheduledClock, Long>> iterator = deadlines.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Map.Entry<ScheduledClock, Long> entry = iterator.next();
+                if (entry.getValue() - now <= 0) {
+                    due.add(entry);
+                    iterator.remove();
+                }
+            }
+
+            reschedule();
+        }
+
+        // The clocks are ticked without holding the scheduler lock, they register their next deadline themselves
+        Collections.sort(due, new Comparator<Map.Entry<ScheduledClock, Long>>() {
+            @Override
+            public int compare(final Map.Entry<ScheduledClock, Long> first, final Map.Entry<ScheduledClock, Long> second) {
+                return Long.signum(first.getValue() - second.getValue());
+            }
+        });
+
+        for (Map.Entry<ScheduledClock, Long> entry : due) {
+            entry.getKey().tick(now);
+        }
+    }
+
+    private void reschedule() {
+        if (deadlines.isEmpty()) {
+            cancelFuture();
+            return;
+        }
+
+        long earliest = 0;
+        boolean first = true;
+        for (Long deadline : deadlines.values()) {
+            if (first || deadline - earliest < 0) {
+                earliest = deadline;
+                first = false;
+            }
+        }
+
+        if (future != null && wakeUpAt == earliest) {
+            return;
+        }
+
+        cancelFuture();
+
+        wakeUpAt = earliest;
+        future = ses.schedule(runner, Math.max(0, earliest - MonotonicClock.now()), TimeUnit.NANOSECONDS);
+    }
+
+    private void cancelFuture() {
+        if (future != null) {
+            future.cancel(false);
+            future = null;
+        }
+    }
+}
@@ -1,16 +1,15 @@
 package org.janssen.scoreboard.controller;
 
-import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
+import org.janssen.scoreboard.dao.GameJournal;
 import org.janssen.scoreboard.model.Game;
 import org.janssen.scoreboard.model.Team;
+import org.janssen.scoreboard.model.type.DisplaySegment;
 import org.janssen.scoreboard.model.type.TeamType;
+import org.janssen.scoreboard.service.broadcast.StreamBroadcaster;
 
-import javax.annotation.PostConstruct;
 import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
-import java.io.IOException;
 
 import static org.janssen.scoreboard.service.util.Constants.SEVEN_SECONDS_IN_MILLI;
 import static org.janssen.scoreboard.service.util.Constants.TWENTY_FOUR_SECONDS;
@@ -22,6 +21,7 @@ import static org.janssen.scoreboard.service.util.Constants.TWENTY_FOUR_SECONDS;
  *  -vnnn score 'v'isitor team
  *  -m mm (minutes)
  *  -s ss (seconds)
+ *  -e sst (seconds and tenths, final minute)
  *  -t tt (24 seconds)
  *  -q n (quarter 1..4)
  *  -a n (foul team A 0..5)
@@ -31,16 +31,20 @@ import static org.janssen.scoreboard.service.util.Constants.TWENTY_FOUR_SECONDS;
  *  -c 1..16 clear led n
  *  -x test
  *  -f Full scoreboard (included all values)
+ *  -p pipe mode, reads the options from stdin (see {@link DisplayDriver})
+ *
+ * The segment updates are coalesced by the {@link DisplayQueue}, so these methods never block.
  *
  * @author Stephan Janssen
  */
 @Stateless
 public class DeviceController {
 
-     final String cmd_score = "/home/pi/score";
-//    final String cmd_score = "/bin/echo";
+    @EJB
+    private DisplayQueue displayQueue;
 
-    final DefaultExecutor executor = new DefaultExecutor();
+    @EJB
+    private DisplayDriver displayDriver;
 
     @EJB
     private GameClockController gameClockController;
@@ -48,12 +52,12 @@ public class DeviceController {
     @EJB
     private TwentyFourClockController twentyFourClockController;
 
-    @PostConstruct
-    public void init() {
-        executor.setExitValue(1);
-    }
+    @EJB
+    private StreamBroadcaster streamBroadcaster;
+
+    @EJB
+    private GameJournal gameJournal;
 
-    @Asynchronous
     public void setScore(final Team team) {
         if (team.getKey().equalsIgnoreCase(TeamType.A.toString())) {
             setScoreHome(team.getScore());
@@ -62,30 +66,49 @@ public class DeviceController {
         }
     }
 
-    @Asynchronous
     public void setScoreHome(final int score) {
-        execute(String.format("%s -h%03d", cmd_score, score));
+        displayQueue.post(DisplaySegment.HOME_SCORE, score);
     }
 
-    @Asynchronous
     public void setScoreVisitors(final int score) {
-        execute(String.format("%s -v%03d", cmd_score, score));
+        displayQueue.post(DisplaySegment.VISITORS_SCORE, score);
     }
 
-    @Asynchronous
+    /**
+     * Show the player fouls for 7 seconds.
+     *
+     * @param foul the player fouls
+     */
     public void setPlayerFoul(final int foul) {
-        execute(String.format("%s -q%d", cmd_score, foul));
+        showQuarterDigit(foul);
+        streamBroadcaster.publishPlayerFouls(foul);
+    }
 
-        try {
-            Thread.sleep(SEVEN_SECONDS_IN_MILLI);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Show the quarter for 7 seconds.
+     *
+     * @param quarter the quarter of the live game
+     */
+    public void setQuarter(final int quarter) {
+        showQuarterDigit(quarter);
+        streamBroadcaster.publishQuarter(streamBroadcaster.getLiveGame(), quarter);
+    }
 
-        execute(String.format("%s -q%d", cmd_score, 0));
+    /**
+     * The quarter changed, only the live stream shows it.
+     *
+     * @param gameId  the game
+     * @param quarter the quarter
+     */
+    public void publishQuarter(final long gameId, final int quarter) {
+        streamBroadcaster.publishQuarter(gameId, quarter);
+    }
+
+    private void showQuarterDigit(final int value) {
+        displayQueue.post(DisplaySegment.QUARTER, value);
+        displayQueue.postLater(DisplaySegment.QUARTER, 0, SEVEN_SECONDS_IN_MILLI);
     }
 
-    @Asynchronous
     public void setFoul(final Team team) {
         if (team.getKey().equalsIgnoreCase(TeamType.A.toString())) {
             setFoulsHome(team.getFouls());
@@ -94,45 +117,60 @@ public class DeviceController {
         }
     }
 
-    @Asynchronous
     public void setFoulsHome(final int fouls) {
-        execute(String.format("%s -a%d", cmd_score, fouls));
+        displayQueue.post(DisplaySegment.FOULS_HOME, fouls);
     }
 
-    @Asynchronous
     public void turnOff() {
-        execute(String.format("%s -z", cmd_score));
+        displayQueue.reset("-z");
     }
 
-    @Asynchronous
     public void setFoulsVisitors(final int fouls) {
-        execute(String.format("%s -b%d", cmd_score, fouls));
+        displayQueue.post(DisplaySegment.FOULS_VISITORS, fouls);
+    }
+
+    /**
+     * The timeouts are shown by the GPIO LEDs, but they're part of the scoreboard frame.
+     *
+     * @param team the team
+     */
+    public void setTimeouts(final Team team) {
+        if (team.getKey().equalsIgnoreCase(TeamType.A.toString())) {
+            displayQueue.post(DisplaySegment.TIMEOUTS_HOME, team.getTimeOut());
+        } else {
+            displayQueue.post(DisplaySegment.TIMEOUTS_VISITORS, team.getTimeOut());
+        }
     }
 
-    @Asynchronous
     public void setAllClocks(final int seconds, final int twentyFourSeconds) {
         setClockOnly(seconds);
-        execute(String.format("%s -t%02d", cmd_score, twentyFourSeconds));
+        setTwentyFour(twentyFourSeconds);
     }
 
-    @Asynchronous
     public void setClockOnly(final int seconds) {
-        execute(String.format("%s -k%02d%02d", cmd_score, seconds/60, seconds%60));
+        displayQueue.post(DisplaySegment.CLOCK, seconds);
+    }
+
+    /**
+     * Show the final minute in tenths of a second.
+     *
+     * @param tenths the game clock in tenths of a second (less than a minute)
+     */
+    public void setClockTenths(final int tenths) {
+        displayQueue.post(DisplaySegment.CLOCK_TENTHS, tenths);
     }
 
-    @Asynchronous
     public void setTwentyFour(final int seconds) {
-        execute(String.format("%s -t%02d", cmd_score, seconds));
+        displayQueue.post(DisplaySegment.TWENTY_FOUR, seconds);
     }
 
-    @Asynchronous
     public void clearBoard() {
-        execute(String.format("%s -z", cmd_score));
+        displayQueue.reset("-z");
     }
 
     @Asynchronous
     public void setScoreboard(final String value) {
-        execute(String.format("%s -f%s", cmd_score, value));
+        displayDriver.send(String.format("-f%s", value));
     }
 
     public void setGame(final Game game) {
@@ -140,21 +178,35 @@ public class DeviceController {
         twentyFourClockController.setTwentyFourSeconds(TWENTY_FOUR_SECONDS);
         gameClockController.setSeconds(game.getClock());
 
+        showGame(game, game.getClock());
+        setTwentyFour(TWENTY_FOUR_SECONDS);
+    }
+
+    /**
+     * Redraw the complete game, all segments are posted within one tick so they're flushed as one frame.
+     *
+     * @param game      the game to show
+     * @param seconds   the game clock
+     */
+    public void showGame(final Game game, final int seconds) {
+        streamBroadcaster.setLiveGame(game.getId());
+        gameJournal.setLiveGame(game.getId());
+        displayQueue.invalidate();
+
         setScore(game.getTeamA());
         setScore(game.getTeamB());
         setFoul(game.getTeamA());
         setFoul(game.getTeamB());
-        setPlayerFoul(game.getQuarter());
-        setAllClocks(game.getClock(), TWENTY_FOUR_SECONDS);
+        setTimeouts(game.getTeamA());
+        setTimeouts(game.getTeamB());
+        setQuarter(game.getQuarter());
+        setClockOnly(seconds);
     }
 
-    private void execute(final String cmd) {
-        final CommandLine cmdLine = CommandLine.parse(cmd);
-        try {
-            executor.execute(cmdLine);
-
-        } catch (IOException e) {
-            // e.printStackTrace();
-        }
+    /**
+     * @return the display pipeline statistics
+     */
+    public String getStatistics() {
+        return displayQueue.getStatistics();
     }
 }
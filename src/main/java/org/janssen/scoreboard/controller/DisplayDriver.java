@@ -0,0 +1,157 @@
+package org.janssen.scoreboard.controller;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecutor;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Keeps one "score -p" process running and pipes the display options to it.
+ * This way we don't fork a new process (and initialize the SPI bus) for every update.
+ *
+ * When the pipe can't be opened (or breaks) we fall back to executing the score command for each option.
+ *
+ * @author Stephan Janssen
+ */
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@Singleton
+public class DisplayDriver {
+
+    private static final Logger LOGGER = Logger.getLogger(DisplayDriver.class.getName());
+
+    static final String CMD_SCORE = "/home/pi/score";
+//    static final String CMD_SCORE = "/bin/echo";
+
+    private static final String PIPE_MODE = "-p";
+
+    // Don't try to (re)start the pipe process more than once every 10 seconds
+    private static final long RETRY_PIPE_IN_MILLIS = 10000;
+
+    private final DefaultExecutor executor = new DefaultExecutor();
+
+    private Process process;
+
+    private Writer pipe;
+
+    private long lastPipeAttempt;
+
+    @PostConstruct
+    public void init() {
+        executor.setExitValue(1);
+
+        openPipe();
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        closePipe();
+    }
+
+    /**
+     * Send one option (for example -h012) to the scoreboard.
+     *
+     * @param option the score option
+     */
+    public void send(final String option) {
+        sendLine(option);
+    }
+
+    /**
+     * Send several options in one write (or one process when not piped).
+     *
+     * @param options the score options
+     */
+    public void send(final List<String> options) {
+        final StringBuilder line = new StringBuilder();
+        for (String option : options) {
+            if (line.length() > 0) {
+                line.append(' ');
+            }
+            line.append(option);
+        }
+        sendLine(line.toString());
+    }
+
+    private synchronized void sendLine(final String line) {
+
+        if (pipe != null || openPipe()) {
+            try {
+                pipe.write(line);
+                pipe.write('\n');
+                pipe.flush();
+                return;
+
+            } catch (IOException e) {
+                LOGGER.warning("Display pipe broken, fall back to exec mode: " + e.getMessage());
+                closePipe();
+            }
+        }
+
+        execute(line);
+    }
+
+    public boolean isPiped() {
+        return pipe != null;
+    }
+
+    private boolean openPipe() {
+        final long now = System.currentTimeMillis();
+        if (now - lastPipeAttempt < RETRY_PIPE_IN_MILLIS) {
+            return false;
+        }
+        lastPipeAttempt = now;
+
+        try {
+            process = new ProcessBuilder(CMD_SCORE, PIPE_MODE)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+
+            pipe = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), "US-ASCII"));
+
+            LOGGER.info("Display pipe opened");
+            return true;
+
+        } catch (IOException e) {
+            LOGGER.warning("Can't open display pipe, using exec mode: " + e.getMessage());
+            closePipe();
+            return false;
+        }
+    }
+
+    private void closePipe() {
+        if (pipe != null) {
+            try {
+                pipe.close();
+            } catch (IOException e) {
+                // Ignore, the process is going down anyway
+            }
+            pipe = null;
+        }
+
+        if (process != null) {
+            process.destroy();
+            process = null;
+        }
+    }
+
+    private void execute(final String options) {
+        final CommandLine cmdLine = CommandLine.parse(CMD_SCORE + " " + options);
+        try {
+            executor.execute(cmdLine);
+
+        } catch (IOException e) {
+            // e.printStackTrace();
+        }
+    }
+}
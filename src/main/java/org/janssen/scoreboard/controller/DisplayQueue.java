@@ -0,0 +1,240 @@
+package org.janssen.scoreboard.controller;
+
+import org.janssen.scoreboard.model.type.DisplaySegment;
+import org.janssen.scoreboard.service.broadcast.StreamBroadcaster;
+
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The single writer display pipeline.
+ *
+ * Every display segment has one slot, a newer value simply replaces the pending one (last write wins).
+ * The pending slots are flushed in a fixed segment order, at most once every tick.
+ * When several segments of the scoreboard frame change within one tick the complete frame
+ * is sent with one -f option instead.
+ * Segments sharing the same digits (the clock and the tenths clock) replace each other.
+ * Every flush is also published to the live stream clients (see {@link StreamBroadcaster}).
+ *
+ * @author Stephan Janssen
+ */
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@Singleton
+public class DisplayQueue {
+
+    // The flush tick, all the updates within this window are sent in one batch
+    static final int TICK_IN_MILLI = 20;
+
+    // Send the full frame when at least this number of frame segments changed within one tick
+    static final int FRAME_THRESHOLD = 3;
+
+    // Marks an empty slot
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private static final DisplaySegment[] SEGMENTS = DisplaySegment.values();
+
+    private final AtomicIntegerArray pending = new AtomicIntegerArray(SEGMENTS.length);
+
+    // Increments for every post, used to cancel delayed posts
+    private final AtomicLongArray versions = new AtomicLongArray(SEGMENTS.length);
+
+    // The last value sent per segment (only used by the flusher)
+    private final int[] shown = new int[SEGMENTS.length];
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    // Statistics
+    private final AtomicLong posted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+
+    @EJB
+    private DisplayDriver displayDriver;
+
+    @EJB
+    private StreamBroadcaster streamBroadcaster;
+
+    @Resource
+    private ManagedScheduledExecutorService ses;
+
+    private final Runnable flusher = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public DisplayQueue() {
+        for (int i = 0; i < SEGMENTS.length; i++) {
+            pending.set(i, NONE);
+            shown[i] = NONE;
+        }
+    }
+
+    /**
+     * Show a value on the given segment, replaces the pending value of that segment (if any).
+     *
+     * @param segment the display segment
+     * @param value   the value to show
+     */
+    public void post(final DisplaySegment segment, final int value) {
+        final int index = segment.ordinal();
+
+        versions.incrementAndGet(index);
+        posted.incrementAndGet();
+
+        if (pending.getAndSet(index, value) != NONE) {
+            coalesced.incrementAndGet();
+        }
+
+        final DisplaySegment sibling = segment.getSibling();
+        if (sibling != null && pending.getAndSet(sibling.ordinal(), NONE) != NONE) {
+            coalesced.incrementAndGet();
+        }
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            ses.schedule(flusher, TICK_IN_MILLI, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Show a value on the given segment after a delay, unless another value is posted for that segment in the meantime.
+     *
+     * @param segment       the display segment
+     * @param value         the value to show
+     * @param delayInMilli  the delay in milliseconds
+     */
+    public void postLater(final DisplaySegment segment, final int value, final long delayInMilli) {
+        final long version = versions.get(segment.ordinal());
+
+        ses.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (versions.get(segment.ordinal()) == version) {
+                    post(segment, value);
+                }
+            }
+        }, delayInMilli, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send a board wide option (like -z), pending segment values are dropped.
+     *
+     * @param option the score option
+     */
+    public synchronized void reset(final String option) {
+        for (int i = 0; i < SEGMENTS.length; i++) {
+            versions.incrementAndGet(i);
+            pending.set(i, NONE);
+            shown[i] = NONE;
+        }
+
+        displayDriver.send(option);
+        sent.incrementAndGet();
+    }
+
+    /**
+     * Forget what is shown on the board, so the next value of every segment is sent again.
+     */
+    public synchronized void invalidate() {
+        for (int i = 0; i < SEGMENTS.length; i++) {
+            shown[i] = NONE;
+        }
+    }
+
+    synchronized void flush() {
+        flushScheduled.set(false);
+
+        final boolean[] changed = new boolean[SEGMENTS.length];
+        int changedInFrame = 0;
+        boolean frameComplete = true;
+
+        for (int i = 0; i < SEGMENTS.length; i++) {
+            final int value = pending.getAndSet(i, NONE);
+
+            if (value != NONE && value != shown[i]) {
+                shown[i] = value;
+                changed[i] = true;
+
+                // The digits no longer show the sibling value
+                final DisplaySegment sibling = SEGMENTS[i].getSibling();
+                if (sibling != null) {
+                    shown[sibling.ordinal()] = NONE;
+                }
+
+                if (ScoreboardFrame.contains(SEGMENTS[i])) {
+                    changedInFrame++;
+                }
+            }
+        }
+
+        for (int i = 0; i < SEGMENTS.length; i++) {
+            if (shown[i] == NONE && ScoreboardFrame.contains(SEGMENTS[i])) {
+                frameComplete = false;
+            }
+        }
+
+        final List<String> options = new ArrayList<String>(SEGMENTS.length);
+        final boolean sendFrame = frameComplete && changedInFrame >= FRAME_THRESHOLD;
+
+        if (sendFrame) {
+            options.add("-f" + ScoreboardFrame.format(shown));
+            frames.incrementAndGet();
+        }
+
+        for (int i = 0; i < SEGMENTS.length; i++) {
+            if (changed[i] && !(sendFrame && ScoreboardFrame.contains(SEGMENTS[i]))) {
+                final String option = SEGMENTS[i].toOption(shown[i]);
+                if (option != null) {
+                    options.add(option);
+                }
+            }
+        }
+
+        if (!options.isEmpty()) {
+            displayDriver.send(options);
+            sent.addAndGet(options.size());
+
+            streamBroadcaster.publish(shown, changed);
+        }
+
+        flushes.incrementAndGet();
+    }
+
+    /**
+     * @return the number of segments waiting to be flushed
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (int i = 0; i < SEGMENTS.length; i++) {
+            if (pending.get(i) != NONE) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    public String getStatistics() {
+        return new StringBuilder()
+                .append("queueDepth=").append(getQueueDepth())
+                .append(", posted=").append(posted.get())
+                .append(", coalesced=").append(coalesced.get())
+                .append(", flushes=").append(flushes.get())
+                .append(", sent=").append(sent.get())
+                .append(", frames=").append(frames.get())
+                .append(", piped=").append(displayDriver.isPiped()).toString();
+    }
+}
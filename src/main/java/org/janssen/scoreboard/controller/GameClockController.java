@@ -1,169 +1,248 @@
 package org.janssen.scoreboard.controller;
 
+import org.janssen.scoreboard.dao.GameJournal;
+import org.janssen.scoreboard.model.Game;
 import org.janssen.scoreboard.model.type.GPIOType;
 import org.janssen.scoreboard.model.type.GameType;
 import org.janssen.scoreboard.service.broadcast.ProducerService;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import javax.annotation.Resource;
-import javax.ejb.Lock;
-import javax.ejb.LockType;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
-import javax.enterprise.concurrent.ManagedScheduledExecutorService;
 import javax.inject.Inject;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.janssen.scoreboard.service.util.Constants.FOOTBALL_DURATION;
-import static org.janssen.scoreboard.service.util.Constants.ZERO_SECONDS;
+import static org.janssen.scoreboard.service.util.Constants.SIXTY_SECONDS;
 
 /**
+ * The game clock, a {@link MonotonicClock} which only ticks (on the {@link ClockScheduler}) when the shown value changes.
+ * Basket counts down and shows the final minute in tenths of a second, football counts up.
+ * When the game clock expires the 24s clock is stopped in the same tick.
+ *
+ * The clock state is one immutable snapshot, start/stop/adjust replace it with a compare-and-set
+ * so the (REST) readers never block and never see half a transition.
+ *
  * @author Stephan Janssen
  */
-// @ConcurrencyManagement(ConcurrencyManagementType.BEAN)
-@Lock(LockType.READ)
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 @Startup
 @Singleton
-public class GameClockController {
+public class GameClockController implements ScheduledClock {
 
     // private static final Logger LOGGER = Logger.getLogger(GameClockController.class.getName());
 
-    // We start at 1 this way it will take max. 99ms
-    // to update the clock when "start" has been signaled!
-    private static final int START_CLOCK = 1;
+    // Show tenths of a second when the (count down) clock is within the final minute
+    private static final long TENTHS_FROM_NANOS = SIXTY_SECONDS * MonotonicClock.NANOS_PER_SECOND;
 
-    // When the milli seconds counter reaches 0 we update the game clock
-    private static final int UPDATE_CLOCK = 0;
+    private static final int TENTHS_PER_MINUTE = 600;
 
-    // We reset the milli seconds timer counter to 10 when the clock has been updated.
-    // This results in 10 x 100ms to pass by to update the game clock again at 1000ms
-    private static final int RESET_TIMER = 10;
-
-    private int milliCounter = START_CLOCK;
-
-    private boolean isRunning = false;
-
-    private int currentTimeInSeconds;
-
-    private GameType gameType;
+    private final AtomicReference<MonotonicClock> state =
+            new AtomicReference<MonotonicClock>(new MonotonicClock(true));
 
     @Inject
-    private GPIOController gpioController;
+    protected GPIOController gpioController;
 
     @Inject
-    private DeviceController device;
+    protected DeviceController device;
 
     @Inject
-    private ProducerService producerService;
+    protected ProducerService producerService;
+
+    @EJB
+    protected ClockScheduler clockScheduler;
+
+    @EJB
+    protected TwentyFourClockController twentyFourClockController;
 
+    @EJB
+    protected GameJournal gameJournal;
 
-    private boolean mirrored = false;
+    private volatile boolean mirrored = false;
 
-    @Resource
-    private ManagedScheduledExecutorService ses;
+    // Only one thread at a time updates the display, always with the latest clock state
+    private final Object displayLock = new Object();
 
-    private ScheduledFuture<?> future;
+    // The last seconds sent to the mirrored scoreboard
+    private int mirroredSeconds = -1;
 
+    // The last clock state written to the game journal
+    private int journaledSeconds = -1;
+    private boolean journaledRunning;
+
+    /**
+     * Keep the game clock running which was running when the server stopped (see {@link GameJournal}).
+     */
     @PostConstruct
     public void init() {
+        final Game game = gameJournal.takeRunningGame();
+        if (game != null) {
+            device.showGame(game, game.getClock());
+            start(game.getClock(), game.getGameType(), Boolean.TRUE.equals(game.isMirrored()));
+        }
+    }
 
-        future = ses.scheduleAtFixedRate(new Runnable() {
-            @Override
-            public void run() {
+    @PreDestroy
+    public void destroy() {
+        clockScheduler.cancel(this);
+    }
 
-                if (isRunning) {
+    public void start(final int currentTimeInSeconds,
+                      final GameType gameType,
+                      final boolean mirrored) {
+        this.mirrored = mirrored;
 
-                    milliCounter--;
+        final boolean countDown = gameType != GameType.FOOTBALL;
 
-                    if (milliCounter <= UPDATE_CLOCK) {
+        while (true) {
+            final long now = MonotonicClock.now();
+            final MonotonicClock current = state.get();
 
-                        switch(gameType) {
+            if (current.isRunning() || currentTimeInSeconds <= 0) {
+                return;
+            }
 
-                            // Increment clock for football
-                            case FOOTBALL:
+            MonotonicClock next = current;
 
-                                currentTimeInSeconds++;     // Clock 'counts up'
+            if (current.isCountDown() != countDown) {
+                next = new MonotonicClock(countDown).setSeconds(currentTimeInSeconds, now);
 
-                                setClock();
-                                if (currentTimeInSeconds >= FOOTBALL_DURATION) {
-                                    endQuarter();
-                                }
-                                break;
+            } else if (current.getSeconds(now) != currentTimeInSeconds) {
+                next = current.setSeconds(currentTimeInSeconds, now);
+            }
+            // else keep the fraction of the second which was left when the clock stopped
 
-                            case BASKET:
-                            case BASKET_KIDS:
+            next = next.start(now);
 
-                                currentTimeInSeconds--;     // For Basket the clock 'counts down'
+            if (state.compareAndSet(current, next)) {
+                scheduleTick(next, now);
+                return;
+            }
+        }
+    }
 
-                                setClock();
-                                if (currentTimeInSeconds <= ZERO_SECONDS) {
-                                    endQuarter();
-                                }
-                                break;
-                        }
+    public void stop() {
+        while (true) {
+            final MonotonicClock current = state.get();
 
-                        milliCounter = RESET_TIMER;
-                    }
-                }
+            if (!current.isRunning()) {
+                return;
             }
-        },  0, 100, TimeUnit.MILLISECONDS);
-    }
 
-    @PreDestroy
-    public void destroy() {
-        future.cancel(true);
+            if (state.compareAndSet(current, current.stop(MonotonicClock.now()))) {
+                clockScheduler.cancel(this);
+                showClock();
+                return;
+            }
+        }
     }
 
-    public synchronized void start(final int currentTimeInSeconds,
-                                   final GameType gameType,
-                                   final boolean mirrored) {
-        this.gameType = gameType;
-        this.mirrored = mirrored;
+    @Override
+    public void tick(final long now) {
+        while (true) {
+            final MonotonicClock current = state.get();
+
+            if (!current.isRunning()) {
+                return;
+            }
+
+            if (!current.isExpired(now) &&
+                (current.isCountDown() || current.getSeconds(now) < FOOTBALL_DURATION)) {
 
-        if (!isRunning && currentTimeInSeconds > 0) {
-            this.currentTimeInSeconds = currentTimeInSeconds;
-            isRunning =  true;
-            milliCounter = 1;
+                showClock();
+                scheduleTick(current, now);
+                return;
+            }
+
+            if (state.compareAndSet(current, current.stop(now))) {
+                endQuarter();
+                return;
+            }
         }
     }
 
-    public synchronized void stop() {
-        if (isRunning) {
-            isRunning = false;
+    /**
+     * Tick when the shown value changes, not any earlier.
+     */
+    private void scheduleTick(final MonotonicClock clock, final long now) {
+        clockScheduler.schedule(this, now + clock.getNanosUntilNextChange(now, getResolution(clock, now)));
+    }
+
+    private long getResolution(final MonotonicClock clock, final long now) {
+        if (clock.isCountDown() && clock.getValue(now) <= TENTHS_FROM_NANOS) {
+            return MonotonicClock.NANOS_PER_TENTH;
         }
+        return MonotonicClock.NANOS_PER_SECOND;
     }
 
     private void endQuarter() {
-        stop();
+        // The 24s clock can't outlive the game clock
+        twentyFourClockController.stop();
+
+        showClock();
 
         gpioController.setBuzz(GPIOType.END_QUARTER);
     }
 
     public void setSeconds(int seconds) {
-        currentTimeInSeconds = seconds;
-
-        setClock();
+        while (true) {
+            final long now = MonotonicClock.now();
+            final MonotonicClock current = state.get();
+            final MonotonicClock next = current.setSeconds(seconds, now);
+
+            if (state.compareAndSet(current, next)) {
+                if (next.isRunning()) {
+                    scheduleTick(next, now);
+                }
+                showClock();
+                return;
+            }
+        }
     }
 
-    private void setClock() {
-        if (mirrored) {
-            producerService.printTimeInSeconds(currentTimeInSeconds);
-        }
+    /**
+     * Show the latest clock state, a slow thread can't overwrite a newer value with an older one.
+     */
+    private void showClock() {
+        synchronized (displayLock) {
+            final MonotonicClock clock = state.get();
+            final long now = MonotonicClock.now();
+            final int seconds = clock.getSeconds(now);
+
+            if (mirrored && seconds != mirroredSeconds) {
+                producerService.printTimeInSeconds(seconds);
+            }
+            mirroredSeconds = seconds;
 
-        device.setClockOnly(currentTimeInSeconds);
+            if (seconds != journaledSeconds || clock.isRunning() != journaledRunning) {
+                journaledSeconds = seconds;
+                journaledRunning = clock.isRunning();
+                gameJournal.clock(seconds, journaledRunning);
+            }
+
+            final int tenths = (int) clock.getDisplayed(now, MonotonicClock.NANOS_PER_TENTH);
+
+            if (clock.isCountDown() && tenths < TENTHS_PER_MINUTE) {
+                device.setClockTenths(tenths);
+            } else {
+                device.setClockOnly(seconds);
+            }
+        }
     }
 
     public int getSeconds() {
-        return currentTimeInSeconds;
+        return state.get().getSeconds(MonotonicClock.now());
     }
 
     public boolean isRunning() {
-        return isRunning;
+        return state.get().isRunning();
     }
 
     public boolean isNotRunning() {
-        return !isRunning;
+        return !isRunning();
     }
 }
@@ -0,0 +1,168 @@
+package org.janssen.scoreboard.controller;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A clock based on System.nanoTime() instants instead of counting timer ticks.
+ *
+ * The time on the clock is always computed from the start value, the accumulated run time
+ * and the instant the clock was (re)started, so a late or missed tick never adds up.
+ * A count down clock shows the value rounded up (24 is shown until a full second has passed
+ * and 0 only when the clock expired), a count up clock shows the value rounded down.
+ *
+ * Immutable, every transition returns a new snapshot so the controllers can publish
+ * the complete clock state with one compare-and-set.
+ *
+ * @author Stephan Janssen
+ */
+public final class MonotonicClock {
+
+    public static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    public static final long NANOS_PER_TENTH = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final boolean countDown;
+
+    // The value of the clock when it was set
+    private final long startValueInNanos;
+
+    // The run time of all the previous start/stop periods
+    private final long accumulatedInNanos;
+
+    // The System.nanoTime() instant of the last start
+    private final long startedAt;
+
+    private final boolean running;
+
+    /**
+     * @param countDown true for a count down clock
+     */
+    public MonotonicClock(final boolean countDown) {
+        this(countDown, 0, 0, 0, false);
+    }
+
+    private MonotonicClock(final boolean countDown,
+                           final long startValueInNanos,
+                           final long accumulatedInNanos,
+                           final long startedAt,
+                           final boolean running) {
+        this.countDown = countDown;
+        this.startValueInNanos = startValueInNanos;
+        this.accumulatedInNanos = accumulatedInNanos;
+        this.startedAt = startedAt;
+        this.running = running;
+    }
+
+    /**
+     * @return the current instant, only meant to be compared with other instants
+     */
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * The instant of a moment in wall clock time, for example the press of a button on another (synchronised) machine.
+     *
+     * @param epochMillis     the moment in System.currentTimeMillis() time
+     * @param maxCompensation the most the instant can lie in the past, in nanos
+     * @return the instant, never in the future and at most maxCompensation before now
+     */
+    public static long instantOf(final long epochMillis, final long maxCompensation) {
+        final long now = now();
+        final long ago = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - epochMillis);
+        return now - Math.max(0, Math.min(ago, maxCompensation));
+    }
+
+    /**
+     * Set the clock, the run time is cleared. A running clock keeps on running from the new value.
+     *
+     * @param valueInNanos the time on the clock
+     * @param now          the current instant
+     * @return the new clock
+     */
+    public MonotonicClock set(final long valueInNanos, final long now) {
+        return new MonotonicClock(countDown, valueInNanos, 0, now, running);
+    }
+
+    public MonotonicClock setSeconds(final int seconds, final long now) {
+        return set(seconds * NANOS_PER_SECOND, now);
+    }
+
+    public MonotonicClock start(final long now) {
+        if (running) {
+            return this;
+        }
+        return new MonotonicClock(countDown, startValueInNanos, accumulatedInNanos, now, true);
+    }
+
+    public MonotonicClock stop(final long now) {
+        if (!running) {
+            return this;
+        }
+        return new MonotonicClock(countDown, startValueInNanos, accumulatedInNanos + (now - startedAt), startedAt, false);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean isCountDown() {
+        return countDown;
+    }
+
+    /**
+     * @param now the current instant
+     * @return the run time since the clock was set
+     */
+    public long getRunTime(final long now) {
+        return running ? accumulatedInNanos + (now - startedAt) : accumulatedInNanos;
+    }
+
+    /**
+     * @param now the current instant
+     * @return the time on the clock, a count down clock never goes below zero
+     */
+    public long getValue(final long now) {
+        if (countDown) {
+            return Math.max(0, startValueInNanos - getRunTime(now));
+        } else {
+            return startValueInNanos + getRunTime(now);
+        }
+    }
+
+    public boolean isExpired(final long now) {
+        return countDown && getValue(now) == 0;
+    }
+
+    /**
+     * @param now        the current instant
+     * @param resolution the display resolution in nanos
+     * @return the number of resolution units shown on the display
+     */
+    public long getDisplayed(final long now, final long resolution) {
+        final long value = getValue(now);
+        if (countDown) {
+            return (value + resolution - 1) / resolution;
+        } else {
+            return value / resolution;
+        }
+    }
+
+    public int getSeconds(final long now) {
+        return (int) getDisplayed(now, NANOS_PER_SECOND);
+    }
+
+    /**
+     * @param now        the current instant
+     * @param resolution the display resolution in nanos
+     * @return the nanos until the shown value changes (or the count down clock expires)
+     */
+    public long getNanosUntilNextChange(final long now, final long resolution) {
+        final long remainder = getValue(now) % resolution;
+        if (countDown) {
+            return remainder == 0 ? resolution : remainder;
+        } else {
+            return resolution - remainder;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.janssen.scoreboard.controller;
+
+/**
+ * A clock driven by the {@link ClockScheduler}.
+ *
+ * @author Stephan Janssen
+ */
+public interface ScheduledClock {
+
+    /**
+     * Called by the scheduler at (or just after) the registered deadline.
+     * A running clock registers its next deadline again, a stopped clock doesn't.
+     *
+     * @param now the current instant (System.nanoTime())
+     */
+    void tick(long now);
+}
@@ -0,0 +1,59 @@
+package org.janssen.scoreboard.controller;
+
+import org.janssen.scoreboard.model.type.DisplaySegment;
+
+/**
+ * The full scoreboard frame as used by the score -f option and documented on the ConsumerService.
+ *
+ * Fixed length
+ * 1) Score Home (3 digits)
+ * 2) Score Visitors (3 digits)
+ * 3) # timeouts Home (1 digit)
+ * 4) # timeouts Visitors (1 digit)
+ * 5) # fouls Home (1 digit)
+ * 6) # fouls Visitors (1 digit)
+ * 7) minutes clock (2 digits)
+ * 8) seconds clock (2 digits)
+ * 9) quarter (1 digit)
+ *
+ * For example: 120140103409591
+ *
+ * @author Stephan Janssen
+ */
+public final class ScoreboardFrame {
+
+    public static final int FRAME_LENGTH = 15;
+
+    private ScoreboardFrame() {
+    }
+
+    /**
+     * The 24s clock and the tenths clock are not part of the frame, they always have their own option.
+     *
+     * @param segment the display segment
+     * @return true when the segment is part of the frame
+     */
+    public static boolean contains(final DisplaySegment segment) {
+        return segment != DisplaySegment.TWENTY_FOUR &&
+               segment != DisplaySegment.CLOCK_TENTHS;
+    }
+
+    /**
+     * @param values the segment values, indexed by the segment ordinal
+     * @return the frame, for example 120140103409591
+     */
+    public static String format(final int[] values) {
+        final int seconds = values[DisplaySegment.CLOCK.ordinal()];
+
+        return String.format("%03d%03d%d%d%d%d%02d%02d%d",
+                values[DisplaySegment.HOME_SCORE.ordinal()],
+                values[DisplaySegment.VISITORS_SCORE.ordinal()],
+                values[DisplaySegment.TIMEOUTS_HOME.ordinal()],
+                values[DisplaySegment.TIMEOUTS_VISITORS.ordinal()],
+                values[DisplaySegment.FOULS_HOME.ordinal()],
+                values[DisplaySegment.FOULS_VISITORS.ordinal()],
+                seconds / 60,
+                seconds % 60,
+                values[DisplaySegment.QUARTER.ordinal()]);
+    }
+}
@@ -1,6 +1,6 @@
 package org.janssen.scoreboard.controller;
 
-import javax.annotation.Resource;
+import javax.annotation.PreDestroy;
 import javax.ejb.*;
 import javax.inject.Inject;
 
@@ -8,18 +8,23 @@ import static org.janssen.scoreboard.service.util.Constants.*;
 import org.janssen.scoreboard.model.type.GPIOType;
 
 /**
- * The 60s clock controller.
+ * The 60s clock controller, shown on the 24s clock and ticked by the {@link ClockScheduler}.
  *
  * @author Stephan Janssen
  */
 @ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 @Singleton
-public class TimeoutClockController {
+public class TimeoutClockController implements ScheduledClock {
+
+    // Give an attention signal when only 10 seconds are left
+    private static final int ATTENTION_SECONDS = 10;
 
-    private static final String CLOCK_NAME = "timeout";
     @EJB
     private TwentyFourClockController twentyFourClockController;
 
+    @EJB
+    private ClockScheduler clockScheduler;
+
     @Inject
     private DeviceController device;
 
@@ -28,16 +33,20 @@ public class TimeoutClockController {
 
     private int twentyFourSecondsValue;
 
-    private int timeoutValue;
+    private volatile MonotonicClock clock = new MonotonicClock(true);
 
-    @Resource
-    private TimerService timerService;
+    private int timeoutValue;
 
-    private boolean isRunning = false;
+    @PreDestroy
+    public synchronized void destroy() {
+        clockScheduler.cancel(this);
+    }
 
     public synchronized void start() {
 
-        if (!isRunning) {
+        if (!clock.isRunning()) {
+            final long now = MonotonicClock.now();
+
             timeoutValue = SIXTY_SECONDS;
 
             if (twentyFourClockController.isRunning()) {
@@ -46,59 +55,61 @@ public class TimeoutClockController {
 
             twentyFourSecondsValue = twentyFourClockController.getTwentyFourSeconds();
 
-            TimerConfig config = new TimerConfig();
-            config.setPersistent(false);
-            config.setInfo(CLOCK_NAME);
-
-            timerService.createIntervalTimer(ONE_SECOND_IN_MILLI, ONE_SECOND_IN_MILLI, config);
+            clock = clock.setSeconds(SIXTY_SECONDS, now).start(now);
 
-            isRunning = true;
+            scheduleTick(now);
         }
     }
 
-    @Timeout
-    private void ejbTimeout() {
+    @Override
+    public synchronized void tick(final long now) {
+        if (!clock.isRunning()) {
+            return;
+        }
 
-        timeoutValue--;
+        final int seconds = clock.getSeconds(now);
 
-        device.setTwentyFour(timeoutValue);
+        if (seconds != timeoutValue) {
+            timeoutValue = seconds;
 
-        if (timeoutValue == 10) {
-            gpioController.setBuzz(GPIOType.ATTENTION, ONE_SECOND_IN_MILLI);
+            device.setTwentyFour(timeoutValue);
+
+            if (timeoutValue == ATTENTION_SECONDS) {
+                gpioController.setBuzz(GPIOType.ATTENTION, ONE_SECOND_IN_MILLI);
+            }
         }
 
         if (timeoutValue <= ZERO_SECONDS) {
 
             stop();
 
-            // Reset 24s to original value
-            device.setTwentyFour(twentyFourSecondsValue);
-
             gpioController.setBuzz(GPIOType.ATTENTION, ONE_SECOND_IN_MILLI);
+
+        } else {
+            scheduleTick(now);
         }
     }
 
+    private void scheduleTick(final long now) {
+        clockScheduler.schedule(this, now + clock.getNanosUntilNextChange(now, MonotonicClock.NANOS_PER_SECOND));
+    }
+
     public synchronized void stop() {
 
-        if (isRunning) {
-            for (Object obj : timerService.getTimers()) {
-                javax.ejb.Timer timer = (javax.ejb.Timer) obj;
-                String timerInfo = (String) timer.getInfo();
-                if (timerInfo.equals(CLOCK_NAME)) {
-                    timer.cancel();
-                    isRunning =  false;
-                }
-            }
+        if (clock.isRunning()) {
+            clock = clock.stop(MonotonicClock.now());
+            clockScheduler.cancel(this);
 
+            // Reset 24s to original value
             device.setTwentyFour(twentyFourSecondsValue);
         }
     }
 
     public boolean isRunning() {
-        return isRunning;
+        return clock.isRunning();
     }
 
     public boolean isNotRunning() {
-        return !isRunning;
+        return !isRunning();
     }
 }
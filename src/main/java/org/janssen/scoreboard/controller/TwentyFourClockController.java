@@ -2,112 +2,163 @@ package org.janssen.scoreboard.controller;
 
 import org.janssen.scoreboard.model.type.GPIOType;
 
-import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import javax.annotation.Resource;
-import javax.ejb.Lock;
-import javax.ejb.LockType;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
-import javax.enterprise.concurrent.ManagedScheduledExecutorService;
 import javax.inject.Inject;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.janssen.scoreboard.service.util.Constants.*;
 
 /**
+ * The 24s clock, a count down {@link MonotonicClock} which only ticks (on the {@link ClockScheduler}) when the shown second changes.
+ * Like the game clock the state is one immutable snapshot replaced with a compare-and-set.
+ *
+ * The 24s black box can start and stop the clock as of the moment the button was pressed, so the network
+ * latency doesn't run off the shot clock. The compensation is limited to a second (-Dscoreboard.twentyfour.compensation.millis)
+ * and never goes back before the previous change of the clock.
+ *
  * @author Stephan Janssen
  */
-// @ConcurrencyManagement(ConcurrencyManagementType.BEAN)
-@Lock(LockType.READ)
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 @Startup
 @Singleton
-public class TwentyFourClockController {
+public class TwentyFourClockController implements ScheduledClock {
 
-    // We start at 1 this way it will take max. 99ms
-    // to update the clock when "start" has been signaled!
-    private static final int START_CLOCK = 1;
+    @Inject
+    protected DeviceController device;
 
-    // When the milli seconds counter reaches 0 we update the 24s clock
-    private static final int UPDATE_CLOCK = 0;
+    @Inject
+    protected GPIOController gpioController;
 
-    // We reset the milli seconds timer counter to 10 when the 24s has been updated.
-    // This results in 10 x 100ms to pass by to update the 24s clock again at 1000ms
-    private static final int RESET_TIMER = 10;
+    @EJB
+    protected ClockScheduler clockScheduler;
 
-    private int milliCounter = START_CLOCK;
+    static final long MAX_COMPENSATION_IN_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("scoreboard.twentyfour.compensation.millis", 1000));
 
-    @Inject
-    private DeviceController device;
+    private final AtomicReference<MonotonicClock> state =
+            new AtomicReference<MonotonicClock>(new MonotonicClock(true).setSeconds(TWENTY_FOUR_SECONDS, MonotonicClock.now()));
 
-    @Inject
-    private GPIOController gpioController;
+    // Only one thread at a time updates the display, always with the latest clock state
+    private final Object displayLock = new Object();
 
-    private int twentyFourSeconds = TWENTY_FOUR_SECONDS;
+    // The instant of the last start, stop or set, a compensated start/stop can't go back before it
+    private volatile long lastChangeAt = MonotonicClock.now();
 
-    private boolean isRunning = false;
+    @PreDestroy
+    public void destroy() {
+        clockScheduler.cancel(this);
+    }
 
-    @Resource
-    private ManagedScheduledExecutorService ses;
+    @Override
+    public void tick(final long now) {
+        while (true) {
+            final MonotonicClock current = state.get();
 
-    private ScheduledFuture<?> future;
+            if (!current.isRunning()) {
+                return;
+            }
 
-    @PostConstruct
-    public void init() {
+            if (!current.isExpired(now)) {
+                showClock();
+                scheduleTick(current, now);
+                return;
+            }
 
-        future = ses.scheduleAtFixedRate(new Runnable() {
+            // Show 0 but the next start is from 24 seconds again
+            final MonotonicClock expired = current.stop(now).setSeconds(TWENTY_FOUR_SECONDS, now);
 
-            @Override
-            public void run() {
-                if (isRunning) {
+            if (state.compareAndSet(current, expired)) {
+                lastChangeAt = now;
 
-                    milliCounter--;
+                synchronized (displayLock) {
+                    if (state.get() == expired) {
+                        device.setTwentyFour(ZERO_SECONDS);
+                    }
+                }
 
-                    if (milliCounter <= UPDATE_CLOCK) {
+                gpioController.setBuzz(GPIOType.END_TWENTY_FOUR);
+                return;
+            }
+        }
+    }
 
-                        // Having the increment here will never show 24 seconds on the clock
-                        twentyFourSeconds--;
+    private void scheduleTick(final MonotonicClock clock, final long now) {
+        clockScheduler.schedule(this, now + clock.getNanosUntilNextChange(now, MonotonicClock.NANOS_PER_SECOND));
+    }
 
-                        device.setTwentyFour(twentyFourSeconds);
+    public void start() {
+        start(MonotonicClock.now());
+    }
 
-                        if (twentyFourSeconds <= ZERO_SECONDS) {
+    /**
+     * Start the clock as of the moment the button was pressed.
+     *
+     * @param pressedAt the moment in (server) epoch millis
+     */
+    public void startAt(final long pressedAt) {
+        start(MonotonicClock.instantOf(pressedAt, MAX_COMPENSATION_IN_NANOS));
+    }
 
-                            stop();
+    private void start(final long instant) {
+        while (true) {
+            final long now = MonotonicClock.now();
+            final MonotonicClock current = state.get();
 
-                            gpioController.setBuzz(GPIOType.END_TWENTY_FOUR);
+            if (current.isRunning() || current.getSeconds(now) <= 0) {
+                return;
+            }
 
-                            twentyFourSeconds = TWENTY_FOUR_SECONDS;
-                        }
+            final long startedAt = Math.max(instant, lastChangeAt);
+            final MonotonicClock next = current.start(startedAt);
 
-                        milliCounter = RESET_TIMER;
-                    }
-                }
+            if (state.compareAndSet(current, next)) {
+                lastChangeAt = startedAt;
+                scheduleTick(next, now);
+                return;
             }
-        }, 0, 100, TimeUnit.MILLISECONDS);
+        }
     }
 
-    @PreDestroy
-    public void destroy() {
-        future.cancel(true);
+    public void stop() {
+        stop(MonotonicClock.now());
     }
 
-    public synchronized void start() {
+    /**
+     * Stop the clock as of the moment the button was pressed, the display shows the value of that moment.
+     *
+     * @param pressedAt the moment in (server) epoch millis
+     */
+    public void stopAt(final long pressedAt) {
+        stop(MonotonicClock.instantOf(pressedAt, MAX_COMPENSATION_IN_NANOS));
+    }
 
-        if (!isRunning && twentyFourSeconds > 0) {
+    private void stop(final long instant) {
+        while (true) {
+            final MonotonicClock current = state.get();
 
-            if (twentyFourSeconds == TWENTY_FOUR_SECONDS) {
-                twentyFourSeconds = TWENTY_FOUR_SECONDS + 1;
+            if (!current.isRunning()) {
+                return;
             }
 
-            milliCounter = 1;
-            isRunning = true;
-        }
-    }
+            final long now = MonotonicClock.now();
+            final long stoppedAt = Math.max(instant, lastChangeAt);
+            final MonotonicClock next = current.stop(stoppedAt);
+
+            if (state.compareAndSet(current, next)) {
+                lastChangeAt = stoppedAt;
+                clockScheduler.cancel(this);
 
-    public synchronized void stop() {
-        if (isRunning) {
-            isRunning =  false;
+                if (next.getSeconds(now) != current.getSeconds(now)) {
+                    showClock();
+                }
+                return;
+            }
         }
     }
 
@@ -116,37 +167,42 @@ public class TwentyFourClockController {
     }
 
     public void setFourTeen() {
-        boolean wasRunning = isRunning();
-
-        if (isRunning()) {
-            stop();
-        }
-
-        this.twentyFourSeconds = FOUR_TEEN_SECONDS + 1;
-        device.setTwentyFour(FOUR_TEEN_SECONDS);
-
-        if (wasRunning) {
-            start();
-        }
-
+        setTwentyFourSeconds(FOUR_TEEN_SECONDS);
     }
 
     public int getTwentyFourSeconds() {
-        return twentyFourSeconds;
+        return state.get().getSeconds(MonotonicClock.now());
     }
 
+    /**
+     * Set the 24s clock, when it's running it keeps on running from the new value.
+     *
+     * @param twentyFourSeconds the seconds
+     */
     public void setTwentyFourSeconds(final int twentyFourSeconds) {
-        boolean wasRunning = isRunning();
+        while (true) {
+            final long now = MonotonicClock.now();
+            final MonotonicClock current = state.get();
+            final MonotonicClock next = current.setSeconds(twentyFourSeconds, now);
 
-        if (isRunning()) {
-            stop();
-        }
+            if (state.compareAndSet(current, next)) {
+                lastChangeAt = now;
 
-        this.twentyFourSeconds = twentyFourSeconds;
-        device.setTwentyFour(twentyFourSeconds);
+                if (next.isRunning()) {
+                    scheduleTick(next, now);
+                }
+                showClock();
+                return;
+            }
+        }
+    }
 
-        if (wasRunning) {
-            start();
+    /**
+     * Show the latest clock state, a slow thread can't overwrite a newer value with an older one.
+     */
+    private void showClock() {
+        synchronized (displayLock) {
+            device.setTwentyFour(state.get().getSeconds(MonotonicClock.now()));
         }
     }
 
@@ -167,10 +223,10 @@ public class TwentyFourClockController {
     }
 
     public boolean isRunning() {
-        return isRunning;
+        return state.get().isRunning();
     }
 
     public boolean isNotRunning() {
-        return !isRunning;
+        return !isRunning();
     }
 }
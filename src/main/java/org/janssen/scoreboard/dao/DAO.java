@@ -16,6 +16,8 @@
  */
 package org.janssen.scoreboard.dao;
 
+import org.apache.openjpa.persistence.Generator;
+import org.apache.openjpa.persistence.OpenJPAEntityManager;
 import org.janssen.scoreboard.model.Token;
 
 import javax.ejb.Lock;
@@ -25,8 +27,10 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Simply maps the entity manager.
@@ -38,7 +42,7 @@ import java.util.List;
 public class DAO {
 
     @PersistenceContext(unitName = "scoreboard")
-    private EntityManager em;
+    EntityManager em;
 
     public <E> E create(E e) {
         em.persist(e);
@@ -49,6 +53,29 @@ public class DAO {
         return em.merge(e);
     }
 
+    /**
+     * Merge the entities in one transaction.
+     */
+    public void updateAll(Collection<?> entities) {
+        for (Object entity : entities) {
+            em.merge(entity);
+        }
+    }
+
+    /**
+     * Take ids from the sequence of the entity until it's past the given id,
+     * so an entity created afterwards never gets an id up to it.
+     *
+     * @param id the highest id in use
+     */
+    public <E> void reserveIds(Class<E> clazz, long id) {
+        final Generator generator = em.unwrap(OpenJPAEntityManager.class).getIdGenerator(clazz);
+        long next = ((Number) generator.next()).longValue();
+        while (next < id) {
+            next = ((Number) generator.next()).longValue();
+        }
+    }
+
     public <E> void delete(Class<E> clazz, long id) {
         em.remove(em.find(clazz, id));
     }
@@ -74,6 +101,41 @@ public class DAO {
         return queryRange(namedQuery, min, max).getResultList();
     }
 
+    /**
+     * @param query      the (JPQL) query, for example a keyset page
+     * @param parameters the named parameters of the query
+     * @param max        the maximum number of results
+     */
+    public <E> List<E> find(Class<E> clazz, String query, Map<String, Object> parameters, int max) {
+        final TypedQuery<E> typedQuery = em.createQuery(query, clazz);
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            typedQuery.setParameter(parameter.getKey(), parameter.getValue());
+        }
+        return queryRange(typedQuery, -1, max).getResultList();
+    }
+
+    /**
+     * @param query the query, with an id parameter
+     * @return the entity (including what the query fetches), or null
+     */
+    public <E> E queryFindById(Class<E> clazz, String query, long id) {
+        final TypedQuery<E> namedQuery = em.createNamedQuery(query, clazz);
+        namedQuery.setParameter("id", id);
+        final List<E> found = namedQuery.getResultList();
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * @param query     the (bulk) delete query
+     * @param expiredOn the entities created before (or on) this moment are deleted
+     * @return the number of deleted entities
+     */
+    public int queryDeleteByCreation(String query, Date expiredOn) {
+        final Query namedQuery = em.createNamedQuery(query);
+        namedQuery.setParameter("expiredOn", expiredOn);
+        return namedQuery.executeUpdate();
+    }
+
     @SuppressWarnings("unchecked")
     public <E> List<E> queryFindByToken(String query, String token) {
         Query namedQuery = em.createNamedQuery(query);
@@ -81,6 +143,13 @@ public class DAO {
         return namedQuery.getResultList();
     }
 
+    @SuppressWarnings("unchecked")
+    public <E> List<E> queryFindByTeam(String query, long teamId) {
+        Query namedQuery = em.createNamedQuery(query);
+        namedQuery.setParameter("teamId", teamId);
+        return namedQuery.getResultList();
+    }
+
     private static Query queryRange(Query query, int min, int max) {
         if (max >= 0) {
             query.setMaxResults(max);
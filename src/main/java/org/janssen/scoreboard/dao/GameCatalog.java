@@ -0,0 +1,243 @@
+package org.janssen.scoreboard.dao;
+
+import org.janssen.scoreboard.model.Game;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The games of the last day, newest first, for the game list of the tablets.
+ *
+ * The index is loaded from the database once and kept up to date on create and delete.
+ * A requested page (and its text) is cached until a game in the catalog changes
+ * or the oldest game of the page is more than one day old.
+ *
+ * @author Stephan Janssen
+ */
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@Singleton
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class GameCatalog {
+
+    static final long ONE_DAY_IN_MILLI = TimeUnit.DAYS.toMillis(1);
+
+    // The number of different pages (first, max) which are cached
+    static final int MAX_PAGES = 16;
+
+    private static final Comparator<CatalogKey> NEWEST_FIRST = new Comparator<CatalogKey>() {
+        @Override
+        public int compare(final CatalogKey one, final CatalogKey other) {
+            if (one.createdOn != other.createdOn) {
+                return one.createdOn > other.createdOn ? -1 : 1;
+            }
+            return one.id == other.id ? 0 : (one.id > other.id ? -1 : 1);
+        }
+    };
+
+    private final ConcurrentSkipListMap<CatalogKey, Game> index = new ConcurrentSkipListMap<CatalogKey, Game>(NEWEST_FIRST);
+
+    private final ConcurrentMap<Long, CatalogKey> keys = new ConcurrentHashMap<Long, CatalogKey>();
+
+    private final ConcurrentMap<Long, Page> pages = new ConcurrentHashMap<Long, Page>();
+
+    // Incremented on every change, a page of an older version is stale
+    private final AtomicLong version = new AtomicLong();
+
+    private volatile boolean loaded;
+
+    // Statistics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Inject
+    private DAO dao;
+
+    @Inject
+    private LiveGameStore liveGameStore;
+
+    /**
+     * @param first the first game (newest is 0)
+     * @param max   the maximum number of games
+     * @return the games of the last day, newest first
+     */
+    public List<Game> list(final int first, final int max) {
+        return page(first, max).games;
+    }
+
+    /**
+     * @param first the first game (newest is 0)
+     * @param max   the maximum number of games
+     * @return the games of the last day as text, one game per line, or null when there are none
+     */
+    public String listAsText(final int first, final int max) {
+        final Page page = page(first, max);
+        if (page.games.isEmpty()) {
+            return null;
+        }
+
+        String text = page.text;
+        if (text == null) {
+            final StringBuilder builder = new StringBuilder(page.games.size() * 80);
+            for (final Game game : page.games) {
+                builder.append(game).append("\n");
+            }
+            text = builder.toString();
+            page.text = text;
+        }
+        return text;
+    }
+
+    public void added(final Game game) {
+        if (game.getCreatedOn() == null) {
+            return;
+        }
+
+        final CatalogKey key = new CatalogKey(game.getCreatedOn().getTime(), game.getId());
+        keys.put(game.getId(), key);
+        index.put(key, game);
+        changed();
+    }
+
+    public void removed(final long id) {
+        final CatalogKey key = keys.remove(id);
+        if (key != null) {
+            index.remove(key);
+        }
+        changed();
+    }
+
+    /**
+     * A game (or one of its teams) changed, the cached pages are stale.
+     */
+    public void changed() {
+        version.incrementAndGet();
+        pages.clear();
+    }
+
+    public String getStatistics() {
+        return new StringBuilder()
+                .append("games=").append(index.size())
+                .append(", pages=").append(pages.size())
+                .append(", version=").append(version.get())
+                .append(", hits=").append(hits.get())
+                .append(", misses=").append(misses.get()).toString();
+    }
+
+    private Page page(final int first, final int max) {
+        final long now = System.currentTimeMillis();
+        final Long pageKey = ((long) first << 32) | (max & 0xffffffffL);
+
+        final Page cached = pages.get(pageKey);
+        if (cached != null && cached.version == version.get() && now < cached.validUntil) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+
+        if (!loaded) {
+            load();
+        }
+
+        final long pageVersion = version.get();
+        final long cutoff = now - ONE_DAY_IN_MILLI;
+        removeOlderThan(cutoff);
+
+        final List<Game> games = new ArrayList<Game>(Math.max(0, Math.min(max, index.size())));
+        long oldest = Long.MAX_VALUE;
+        int position = 0;
+
+        for (Map.Entry<CatalogKey, Game> entry : index.entrySet()) {
+            if (max >= 0 && games.size() >= max) {
+                break;
+            }
+            if (entry.getKey().createdOn <= cutoff) {
+                break;
+            }
+            if (position++ < first) {
+                continue;
+            }
+
+            // The games being played have newer values in memory
+            games.add(liveGameStore.live(entry.getValue()));
+            oldest = entry.getKey().createdOn;
+        }
+
+        final Page page = new Page(pageVersion, Collections.unmodifiableList(games),
+                oldest == Long.MAX_VALUE ? now + ONE_DAY_IN_MILLI : oldest + ONE_DAY_IN_MILLI);
+
+        if (pages.size() >= MAX_PAGES) {
+            pages.clear();
+        }
+        pages.put(pageKey, page);
+        return page;
+    }
+
+    private synchronized void load() {
+        if (loaded) {
+            return;
+        }
+
+        final Date oneDayOld = new Date(System.currentTimeMillis() - ONE_DAY_IN_MILLI);
+        for (Game game : dao.queryFindByCreation(Game.class, "game.list", oneDayOld, -1, -1)) {
+            if (!keys.containsKey(game.getId())) {
+                added(game);
+            }
+        }
+        loaded = true;
+    }
+
+    private void removeOlderThan(final long cutoff) {
+        // The oldest games are at the end of the index
+        final ConcurrentNavigableMap<CatalogKey, Game> expired = index.tailMap(new CatalogKey(cutoff, Long.MAX_VALUE), true);
+        for (CatalogKey key : expired.keySet()) {
+            index.remove(key);
+            keys.remove(key.id, key);
+        }
+    }
+
+    private static final class CatalogKey {
+
+        private final long createdOn;
+
+        private final long id;
+
+        private CatalogKey(final long createdOn, final long id) {
+            this.createdOn = createdOn;
+            this.id = id;
+        }
+    }
+
+    private static final class Page {
+
+        private final long version;
+
+        private final List<Game> games;
+
+        private final long validUntil;
+
+        // Rendered on first use
+        private volatile String text;
+
+        private Page(final long version, final List<Game> games, final long validUntil) {
+            this.version = version;
+            this.games = games;
+            this.validUntil = validUntil;
+        }
+    }
+}
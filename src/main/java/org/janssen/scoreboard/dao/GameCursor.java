@@ -0,0 +1,62 @@
+package org.janssen.scoreboard.dao;
+
+import org.janssen.scoreboard.model.Game;
+
+/**
+ * A position in the game history, newest first: the games created before the cursor (or at the same
+ * moment with a lower id) come next. Written as "createdOn:id" with createdOn in epoch millis,
+ * the id can be left out ("createdOn") to start at a moment.
+ *
+ * @author Stephan Janssen
+ */
+public final class GameCursor {
+
+    private final long createdOn;
+
+    private final long id;
+
+    public GameCursor(final long createdOn, final long id) {
+        this.createdOn = createdOn;
+        this.id = id;
+    }
+
+    /**
+     * @param game the last game of a page
+     * @return the cursor of the next page
+     */
+    public static GameCursor after(final Game game) {
+        return new GameCursor(game.getCreatedOn().getTime(), game.getId());
+    }
+
+    /**
+     * @param value the cursor, for example 1444397523000:42
+     * @return the cursor
+     * @throws IllegalArgumentException when the value isn't a cursor
+     */
+    public static GameCursor parse(final String value) {
+        final int separator = value.indexOf(':');
+        try {
+            if (separator < 0) {
+                return new GameCursor(Long.parseLong(value.trim()), Long.MAX_VALUE);
+            }
+            return new GameCursor(Long.parseLong(value.substring(0, separator).trim()),
+                                  Long.parseLong(value.substring(separator + 1).trim()));
+
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor " + value);
+        }
+    }
+
+    public long getCreatedOn() {
+        return createdOn;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return createdOn + ":" + id;
+    }
+}
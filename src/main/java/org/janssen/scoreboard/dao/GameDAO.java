@@ -9,12 +9,19 @@ import javax.ejb.Lock;
 import javax.ejb.LockType;
 import javax.ejb.Singleton;
 import javax.inject.Inject;
-import java.util.Calendar;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.janssen.scoreboard.service.util.Constants.*;
 
 /**
+ * The games being played are kept in memory by the {@link LiveGameStore}, their updates are written behind
+ * and journaled (see {@link GameJournal}) so they survive a reboot.
+ * The game list is served by the {@link GameCatalog}.
+ *
  * @author Stephan Janssen
  */
 @Singleton
@@ -24,6 +31,15 @@ public class GameDAO {
     @Inject
     private DAO dao;
 
+    @Inject
+    private LiveGameStore liveGameStore;
+
+    @Inject
+    private GameJournal gameJournal;
+
+    @Inject
+    private GameCatalog gameCatalog;
+
     public Game create(final Team teamA,
                        final Team teamB,
                        final int typeNumber,
@@ -47,7 +63,10 @@ public class GameDAO {
 
         game.setTeamA(teamA);
         game.setTeamB(teamB);
-        return dao.create(game);
+        final Game created = dao.create(game);
+        gameJournal.created(created);
+        gameCatalog.added(created);
+        return created;
     }
 
     public void setGameClock(final Game game) {
@@ -71,26 +90,104 @@ public class GameDAO {
 
 
     public List<Game> list(int first, int max) {
-        final Calendar cal = Calendar.getInstance();
-        cal.add(Calendar.DAY_OF_MONTH, -1);
-        return dao.queryFindByCreation(Game.class, "game.list", cal.getTime(), first, max);
+        return gameCatalog.list(first, max);
+    }
+
+    /**
+     * @return the games as text (one per line), or null when there are none
+     */
+    public String listAsText(int first, int max) {
+        return gameCatalog.listAsText(first, max);
+    }
+
+    /**
+     * A page of the game history, newest first. The page starts after the cursor (on the createdOn index)
+     * instead of skipping the newer games, so a deep page costs the same as the first one.
+     *
+     * @param after       the cursor, the games before it are returned
+     * @param court       only the games on this court (or null)
+     * @param ageCategory only the games of this age category (or null)
+     * @param gameType    only the games of this type (or null)
+     * @param max         the maximum number of games
+     * @return the games
+     */
+    public List<Game> history(final GameCursor after,
+                              final String court,
+                              final AgeCategory ageCategory,
+                              final GameType gameType,
+                              final int max) {
+
+        final StringBuilder query = new StringBuilder("select g from Game g join fetch g.teamA join fetch g.teamB where ")
+                .append("(g.createdOn < :createdOn or (g.createdOn = :createdOn and g.id < :id))");
+
+        final Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("createdOn", new Date(after.getCreatedOn()));
+        parameters.put("id", after.getId());
+
+        if (court != null) {
+            query.append(" and g.court = :court");
+            parameters.put("court", court);
+        }
+        if (ageCategory != null) {
+            query.append(" and g.ageCategory = :ageCategory");
+            parameters.put("ageCategory", ageCategory);
+        }
+        if (gameType != null) {
+            query.append(" and g.gameType = :gameType");
+            parameters.put("gameType", gameType);
+        }
+        query.append(" order by g.createdOn desc, g.id desc");
+
+        final List<Game> games = dao.find(Game.class, query.toString(), parameters, max);
+
+        // The games being played have newer values in memory
+        final List<Game> liveGames = new ArrayList<Game>(games.size());
+        for (Game game : games) {
+            liveGames.add(liveGameStore.live(game));
+        }
+        return liveGames;
     }
 
     public Long totalGames() {
         return (Long)dao.count("game.count");
     }
 
+    /**
+     * @param id the game id, an id from before a restart is resolved by the {@link GameJournal}
+     */
     public Game find(long id) {
-        return dao.find(Game.class, id);
+        return liveGameStore.findGame(gameJournal.resolve(id));
+    }
+
+    /**
+     * @param teamId the team id
+     * @return the game the team plays in, or null
+     */
+    public Game findByTeam(long teamId) {
+        final long liveTeamId = gameJournal.resolve(teamId);
+
+        final Game game = liveGameStore.findGameOfTeam(liveTeamId);
+        if (game != null) {
+            return game;
+        }
+
+        final List<Long> ids = dao.queryFindByTeam("game.findByTeam", liveTeamId);
+        return ids.isEmpty() ? null : liveGameStore.findGame(ids.get(0));
     }
 
     public void delete(long id) {
-        dao.delete(Game.class, id);
+        final long liveId = gameJournal.resolve(id);
+
+        liveGameStore.remove(liveId);
+        gameJournal.deleted(liveId);
+        gameCatalog.removed(liveId);
+        dao.delete(Game.class, liveId);
     }
 
     public Game update(final Game game) {
-        game.setQuarter(game.getQuarter());
-        game.setClock(game.getClock());
-        return dao.update(game);
+        liveGameStore.update(game);
+        gameJournal.updated(game);
+        gameCatalog.changed();
+        return game;
     }
 }
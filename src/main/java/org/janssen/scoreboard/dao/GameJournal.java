@@ -0,0 +1,541 @@
+package org.janssen.scoreboard.dao;
+
+import org.janssen.scoreboard.model.Game;
+import org.janssen.scoreboard.model.Team;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the game events, because the database only lives in memory.
+ *
+ * The journal is a memory-mapped file, appending an event is a copy into the mapped buffer
+ * and the buffer is forced to disk every 200ms (when changed). Every record is
+ *
+ * length (4 bytes) | type (1 byte) | payload | CRC32 of type and payload (4 bytes)
+ *
+ * and the length is written last, so a torn record ends the replay.
+ * The events hold the new values (not the differences), so replaying a record twice does no harm.
+ *
+ * On startup the journal is replayed and the games of the last day are recreated in the database. OpenJPA doesn't
+ * insert a given id for a generated one, so the games and teams get new ids, after moving the id sequence past
+ * the journaled ones. {@link #resolve(long)} maps a journaled id (which the scoreboards and the 24s box still use)
+ * to the new one, a new id never equals a journaled one.
+ * The journal is then compacted: rewritten as one snapshot record per game, which also happens when the journal is full.
+ *
+ * A game clock which was running keeps running, moved on by the time the server was down (see {@link #takeRunningGame()}).
+ * Start with -Dscoreboard.journal.restore.stopped=true to restore it stopped, at the last second it showed.
+ *
+ * @author Stephan Janssen
+ */
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@Startup
+@Singleton
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class GameJournal {
+
+    private static final Logger LOGGER = Logger.getLogger(GameJournal.class.getName());
+
+    static final String DIRECTORY_PROPERTY = "scoreboard.journal.dir";
+
+    static final String JOURNAL_FILE = "game.journal";
+
+    static final int JOURNAL_SIZE = 4 * 1024 * 1024;
+
+    static final int FORCE_INTERVAL_IN_MILLI = 200;
+
+    // The record types
+    static final byte SNAPSHOT = 1;
+    static final byte TEAM = 2;
+    static final byte GAME = 3;
+    static final byte CLOCK = 4;
+    static final byte DELETE = 5;
+
+    // Only the games of the last day are restored, like the game list
+    static final long RESTORE_PERIOD_IN_MILLI = TimeUnit.DAYS.toMillis(1);
+
+    static final boolean RESTORE_STOPPED = Boolean.getBoolean("scoreboard.journal.restore.stopped");
+
+    // Length, type and checksum
+    private static final int RECORD_OVERHEAD = 9;
+
+    // The journaled games by id, guarded by this
+    private final Map<Long, JournaledGame> games = new LinkedHashMap<Long, JournaledGame>();
+
+    // Reused for every record, guarded by this
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final CRC32 crc = new CRC32();
+
+    private File file;
+
+    // The mapping stays valid after its channel is closed
+    private MappedByteBuffer buffer;
+
+    private boolean dirty;
+
+    private long liveGameId;
+
+    // The journaled ids of the restored games and teams to their new ids, guarded by this
+    private final Map<Long, Long> restoredIds = new HashMap<Long, Long>();
+
+    // The restored game with a running clock, until the game clock takes it
+    private Game runningGame;
+
+    // Statistics
+    private long appended;
+    private long forces;
+    private long compactions;
+    private long replayed;
+    private long replayInMilli;
+
+    @Inject
+    private DAO dao;
+
+    @Resource
+    private ManagedScheduledExecutorService ses;
+
+    @PostConstruct
+    public void init() {
+        final String directory = System.getProperty(DIRECTORY_PROPERTY,
+                System.getProperty("user.home") + File.separator + ".scoreboard");
+
+        file = new File(directory, JOURNAL_FILE);
+
+        try {
+            final long start = System.nanoTime();
+
+            replay();
+            restore();
+            compact();
+
+            replayInMilli = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            LOGGER.info("Game journal " + file + " replayed " + replayed + " records in " + replayInMilli + "ms");
+
+        } catch (IOException e) {
+            LOGGER.severe("Game journal " + file + " disabled: " + e.getMessage());
+            buffer = null;
+        }
+
+        ses.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                force();
+            }
+        }, FORCE_INTERVAL_IN_MILLI, FORCE_INTERVAL_IN_MILLI, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        force();
+        buffer = null;
+    }
+
+    public synchronized void created(final Game game) {
+        final JournaledGame journaled = JournaledGame.of(game);
+        games.put(journaled.id, journaled);
+
+        try {
+            out.writeByte(SNAPSHOT);
+            journaled.write(out);
+            append();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    public synchronized void updated(final Game game) {
+        final JournaledGame journaled = games.get(game.getId());
+        if (journaled == null) {
+            return;
+        }
+        journaled.update(game);
+
+        try {
+            out.writeByte(GAME);
+            out.writeLong(game.getId());
+            out.writeInt(journaled.quarter);
+            out.writeInt(journaled.clock);
+            append();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    public synchronized void updated(final Team team) {
+        final JournaledGame.JournaledTeam journaled = findTeam(team.getId());
+        if (journaled == null) {
+            return;
+        }
+        journaled.update(team);
+
+        try {
+            out.writeByte(TEAM);
+            out.writeLong(team.getId());
+            out.writeInt(journaled.score);
+            out.writeInt(journaled.fouls);
+            out.writeInt(journaled.timeOut);
+            append();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * The game clock of the live game, journaled when the shown seconds change and on start/stop.
+     *
+     * @param seconds the seconds on the clock
+     * @param running true when the clock runs
+     */
+    public synchronized void clock(final int seconds, final boolean running) {
+        final JournaledGame journaled = games.get(liveGameId);
+        if (journaled == null) {
+            return;
+        }
+        journaled.clock = seconds;
+        journaled.clockRunning = running;
+        journaled.clockChangedAt = System.currentTimeMillis();
+
+        try {
+            out.writeByte(CLOCK);
+            out.writeLong(liveGameId);
+            out.writeLong(journaled.clockChangedAt);
+            out.writeInt(seconds);
+            out.writeBoolean(running);
+            append();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    public synchronized void deleted(final long gameId) {
+        if (games.remove(gameId) == null) {
+            return;
+        }
+
+        try {
+            out.writeByte(DELETE);
+            out.writeLong(gameId);
+            append();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * @param gameId the game shown on the board, the clock events are for this game
+     */
+    public synchronized void setLiveGame(final long gameId) {
+        liveGameId = gameId;
+    }
+
+    /**
+     * @param id a game or team id, possibly from before the restart
+     * @return the id of the game or team now
+     */
+    public synchronized long resolve(final long id) {
+        final Long restoredId = restoredIds.get(id);
+        return restoredId == null ? id : restoredId;
+    }
+
+    /**
+     * @return the restored game (with its teams) of which the clock must keep running, only once, or null
+     */
+    public synchronized Game takeRunningGame() {
+        final Game game = runningGame;
+        runningGame = null;
+        return game;
+    }
+
+    public synchronized String getStatistics() {
+        return new StringBuilder()
+                .append("file=").append(file)
+                .append(", enabled=").append(buffer != null)
+                .append(", games=").append(games.size())
+                .append(", used=").append(buffer == null ? 0 : buffer.position())
+                .append(", appended=").append(appended)
+                .append(", forces=").append(forces)
+                .append(", compactions=").append(compactions)
+                .append(", replayed=").append(replayed)
+                .append(", replayInMilli=").append(replayInMilli).toString();
+    }
+
+    /**
+     * Write the fsync batch to disk.
+     */
+    synchronized void force() {
+        if (dirty && buffer != null) {
+            buffer.force();
+            dirty = false;
+            forces++;
+        }
+    }
+
+    /**
+     * Append the record in the output bytes (type followed by the payload) to the journal.
+     */
+    private void append() throws IOException {
+        try {
+            if (buffer == null) {
+                return;
+            }
+
+            // Keep room for the zero length which ends the journal
+            final int needed = bytes.size() + RECORD_OVERHEAD + 4;
+            if (buffer.remaining() < needed) {
+                compact();
+
+                if (buffer.remaining() < needed) {
+                    throw new IOException("Game journal full");
+                }
+            }
+            write(buffer, bytes.toByteArray());
+
+            appended++;
+            dirty = true;
+
+        } finally {
+            bytes.reset();
+        }
+    }
+
+    private void write(final MappedByteBuffer target, final byte[] record) {
+        crc.reset();
+        crc.update(record, 0, record.length);
+
+        final int start = target.position();
+        target.position(start + 4);
+        target.put(record);
+        target.putInt((int) crc.getValue());
+
+        // The length commits the record
+        target.putInt(start, record.length);
+    }
+
+    private void replay() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final MappedByteBuffer journal = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+
+            while (journal.remaining() >= RECORD_OVERHEAD) {
+                final int length = journal.getInt();
+                if (length <= 0 || length + 4 > journal.remaining()) {
+                    break;
+                }
+
+                final byte[] record = new byte[length];
+                journal.get(record);
+
+                crc.reset();
+                crc.update(record, 0, length);
+                if (journal.getInt() != (int) crc.getValue()) {
+                    LOGGER.warning("Game journal ends with a torn record at " + (journal.position() - length - RECORD_OVERHEAD));
+                    break;
+                }
+
+                apply(new DataInputStream(new ByteArrayInputStream(record)));
+                replayed++;
+            }
+        }
+    }
+
+    private void apply(final DataInputStream in) throws IOException {
+        final byte type = in.readByte();
+
+        if (type == SNAPSHOT) {
+            final JournaledGame journaled = JournaledGame.read(in);
+            games.put(journaled.id, journaled);
+
+        } else if (type == TEAM) {
+            final JournaledGame.JournaledTeam team = findTeam(in.readLong());
+            if (team != null) {
+                team.score = in.readInt();
+                team.fouls = in.readInt();
+                team.timeOut = in.readInt();
+            }
+
+        } else if (type == GAME) {
+            final JournaledGame game = games.get(in.readLong());
+            if (game != null) {
+                game.quarter = in.readInt();
+                game.clock = in.readInt();
+            }
+
+        } else if (type == CLOCK) {
+            final JournaledGame game = games.get(in.readLong());
+            if (game != null) {
+                game.clockChangedAt = in.readLong();
+                game.clock = in.readInt();
+                game.clockRunning = in.readBoolean();
+            }
+
+        } else if (type == DELETE) {
+            games.remove(in.readLong());
+        }
+    }
+
+    /**
+     * Recreate the journaled games in the (empty) database, the journaled ids are mapped to the new ones.
+     */
+    private void restore() {
+        if (games.isEmpty()) {
+            return;
+        }
+
+        final List<JournaledGame> restored = new ArrayList<JournaledGame>(games.values());
+        games.clear();
+
+        final long now = System.currentTimeMillis();
+        final long oldest = now - RESTORE_PERIOD_IN_MILLI;
+
+        // Only the clock of the live game runs, the latest change wins
+        JournaledGame running = null;
+        long maxId = 0;
+        for (JournaledGame journaled : restored) {
+            maxId = Math.max(maxId, Math.max(journaled.id, Math.max(journaled.teamA.id, journaled.teamB.id)));
+
+            if (journaled.clockRunning && journaled.createdOn >= oldest &&
+                (running == null || journaled.clockChangedAt > running.clockChangedAt)) {
+                running = journaled;
+            }
+        }
+
+        // A new id never equals a journaled one, so the mapping is never ambiguous
+        dao.reserveIds(Game.class, maxId);
+        dao.reserveIds(Team.class, maxId);
+
+        for (JournaledGame journaled : restored) {
+            if (journaled.createdOn < oldest) {
+                continue;
+            }
+
+            if (journaled.clockRunning) {
+                if (journaled != running || RESTORE_STOPPED) {
+                    journaled.clockRunning = false;
+                    LOGGER.info("Game " + journaled.id + " clock was running, restored stopped at " + journaled.clock + "s");
+
+                } else if (journaled.runClockUntil(now)) {
+                    LOGGER.info("Game " + journaled.id + " clock was running, restored running at " + journaled.clock + "s");
+
+                } else {
+                    LOGGER.info("Game " + journaled.id + " clock expired while the server was down");
+                }
+            }
+
+            final Game game = journaled.toGame();
+            dao.create(game.getTeamA());
+            dao.create(game.getTeamB());
+            dao.create(game);
+
+            restoredIds.put(journaled.teamA.id, game.getTeamA().getId());
+            restoredIds.put(journaled.teamB.id, game.getTeamB().getId());
+            restoredIds.put(journaled.id, game.getId());
+
+            LOGGER.info("Game " + journaled.id + " restored as game " + game.getId() + ", teams " +
+                        journaled.teamA.id + " -> " + game.getTeamA().getId() + ", " +
+                        journaled.teamB.id + " -> " + game.getTeamB().getId());
+
+            final JournaledGame recreated = JournaledGame.of(game);
+            recreated.createdOn = journaled.createdOn;
+            recreated.clockRunning = journaled.clockRunning;
+            recreated.clockChangedAt = journaled.clockChangedAt;
+            games.put(recreated.id, recreated);
+
+            if (recreated.clockRunning) {
+                runningGame = game;
+                liveGameId = game.getId();
+            }
+        }
+    }
+
+    /**
+     * Rewrite the journal as one snapshot per game, the new journal replaces the old one atomically.
+     */
+    private void compact() throws IOException {
+        final File compacted = new File(file.getParentFile(), JOURNAL_FILE + ".tmp");
+        if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+            throw new IOException("Unable to create " + file.getParentFile());
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(compacted, "rw")) {
+            raf.setLength(0);
+            raf.setLength(JOURNAL_SIZE);
+
+            final MappedByteBuffer compactedBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, JOURNAL_SIZE);
+
+            final ByteArrayOutputStream snapshot = new ByteArrayOutputStream(256);
+            final DataOutputStream snapshotOut = new DataOutputStream(snapshot);
+            for (JournaledGame journaled : games.values()) {
+                snapshot.reset();
+                snapshotOut.writeByte(SNAPSHOT);
+                journaled.write(snapshotOut);
+                write(compactedBuffer, snapshot.toByteArray());
+
+                // The snapshot has no clock state
+                if (journaled.clockChangedAt != 0) {
+                    snapshot.reset();
+                    snapshotOut.writeByte(CLOCK);
+                    snapshotOut.writeLong(journaled.id);
+                    snapshotOut.writeLong(journaled.clockChangedAt);
+                    snapshotOut.writeInt(journaled.clock);
+                    snapshotOut.writeBoolean(journaled.clockRunning);
+                    write(compactedBuffer, snapshot.toByteArray());
+                }
+            }
+            compactedBuffer.force();
+
+            Files.move(compacted.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            buffer = compactedBuffer;
+            dirty = false;
+            compactions++;
+        }
+    }
+
+    private JournaledGame.JournaledTeam findTeam(final long teamId) {
+        for (JournaledGame game : games.values()) {
+            final JournaledGame.JournaledTeam team = game.team(teamId);
+            if (team != null) {
+                return team;
+            }
+        }
+        return null;
+    }
+
+    private void failed(final IOException e) {
+        bytes.reset();
+        LOGGER.warning("Unable to journal game event: " + e.getMessage());
+    }
+}
@@ -0,0 +1,196 @@
+package org.janssen.scoreboard.dao;
+
+import org.janssen.scoreboard.model.Game;
+import org.janssen.scoreboard.model.Team;
+import org.janssen.scoreboard.model.type.AgeCategory;
+import org.janssen.scoreboard.model.type.GameType;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.janssen.scoreboard.service.util.Constants.FOOTBALL_DURATION;
+
+/**
+ * The state of a game as known by the {@link GameJournal}, enough to rebuild the game and its teams.
+ *
+ * @author Stephan Janssen
+ */
+class JournaledGame {
+
+    long id;
+    long createdOn;
+    String userName;
+    String court;
+    String gameType;
+    String ageCategory;
+    boolean mirrored;
+    int quarter;
+    int clock;
+    boolean clockRunning;
+    long clockChangedAt;
+
+    final JournaledTeam teamA = new JournaledTeam();
+    final JournaledTeam teamB = new JournaledTeam();
+
+    static JournaledGame of(final Game game) {
+        final JournaledGame journaled = new JournaledGame();
+        journaled.id = game.getId();
+        journaled.createdOn = game.getCreatedOn() == null ? System.currentTimeMillis() : game.getCreatedOn().getTime();
+        journaled.userName = game.getUserName();
+        journaled.court = game.getCourt();
+        journaled.gameType = game.getGameType() == null ? null : game.getGameType().name();
+        journaled.ageCategory = game.getAgeCategory() == null ? null : game.getAgeCategory().name();
+        journaled.mirrored = Boolean.TRUE.equals(game.isMirrored());
+        journaled.update(game);
+        journaled.teamA.update(game.getTeamA());
+        journaled.teamB.update(game.getTeamB());
+        return journaled;
+    }
+
+    void update(final Game game) {
+        quarter = game.getQuarter();
+        clock = game.getClock();
+    }
+
+    /**
+     * @param teamId the team id
+     * @return the team of this game, or null
+     */
+    JournaledTeam team(final long teamId) {
+        if (teamA.id == teamId) {
+            return teamA;
+        }
+        if (teamB.id == teamId) {
+            return teamB;
+        }
+        return null;
+    }
+
+    /**
+     * Move a clock which was running at the last journaled change on to the given moment.
+     *
+     * @param now the moment in epoch millis
+     * @return true when the clock still runs at that moment
+     */
+    boolean runClockUntil(final long now) {
+        final int elapsed = (int) TimeUnit.MILLISECONDS.toSeconds(Math.max(0, now - clockChangedAt));
+
+        if (GameType.FOOTBALL.name().equals(gameType)) {
+            clock = Math.min(FOOTBALL_DURATION, clock + elapsed);
+            clockRunning = clock < FOOTBALL_DURATION;
+        } else {
+            clock = Math.max(0, clock - elapsed);
+            clockRunning = clock > 0;
+        }
+        clockChangedAt = now;
+        return clockRunning;
+    }
+
+    /**
+     * @return a new (not persisted) game with new teams
+     */
+    Game toGame() {
+        final Game game = new Game();
+        game.setUserName(userName);
+        game.setCourt(court);
+        game.setGameType(gameType == null ? null : GameType.valueOf(gameType));
+        game.setAgeCategory(ageCategory == null ? null : AgeCategory.valueOf(ageCategory));
+        game.setMirrored(mirrored);
+        game.setQuarter(quarter);
+        game.setClock(clock);
+        game.setTeamA(teamA.toTeam(mirrored));
+        game.setTeamB(teamB.toTeam(mirrored));
+        return game;
+    }
+
+    void write(final DataOutput out) throws IOException {
+        out.writeLong(id);
+        out.writeLong(createdOn);
+        writeString(out, userName);
+        writeString(out, court);
+        writeString(out, gameType);
+        writeString(out, ageCategory);
+        out.writeBoolean(mirrored);
+        out.writeInt(quarter);
+        out.writeInt(clock);
+        teamA.write(out);
+        teamB.write(out);
+    }
+
+    static JournaledGame read(final DataInput in) throws IOException {
+        final JournaledGame journaled = new JournaledGame();
+        journaled.id = in.readLong();
+        journaled.createdOn = in.readLong();
+        journaled.userName = readString(in);
+        journaled.court = readString(in);
+        journaled.gameType = readString(in);
+        journaled.ageCategory = readString(in);
+        journaled.mirrored = in.readBoolean();
+        journaled.quarter = in.readInt();
+        journaled.clock = in.readInt();
+        journaled.teamA.read(in);
+        journaled.teamB.read(in);
+        return journaled;
+    }
+
+    static void writeString(final DataOutput out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String readString(final DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static class JournaledTeam {
+
+        long id;
+        String name;
+        String key;
+        int score;
+        int fouls;
+        int timeOut;
+
+        void update(final Team team) {
+            id = team.getId();
+            name = team.getName();
+            key = team.getKey();
+            score = team.getScore();
+            fouls = team.getFouls();
+            timeOut = team.getTimeOut();
+        }
+
+        Team toTeam(final boolean mirrored) {
+            final Team team = new Team();
+            team.setName(name);
+            team.setKey(key);
+            team.setScore(score);
+            team.setFouls(fouls);
+            team.setTimeOut(timeOut);
+            team.setMirrored(mirrored);
+            return team;
+        }
+
+        void write(final DataOutput out) throws IOException {
+            out.writeLong(id);
+            writeString(out, name);
+            writeString(out, key);
+            out.writeInt(score);
+            out.writeInt(fouls);
+            out.writeInt(timeOut);
+        }
+
+        void read(final DataInput in) throws IOException {
+            id = in.readLong();
+            name = readString(in);
+            key = readString(in);
+            score = in.readInt();
+            fouls = in.readInt();
+            timeOut = in.readInt();
+        }
+    }
+}
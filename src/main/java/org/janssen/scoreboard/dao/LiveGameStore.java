@@ -0,0 +1,359 @@
+package org.janssen.scoreboard.dao;
+
+import org.janssen.scoreboard.model.Game;
+import org.janssen.scoreboard.model.Team;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * The authoritative in-memory state of the games being played.
+ *
+ * There is one (canonical) instance per game and per team, the game refers to the same team instances,
+ * so a score change is seen by everyone reading the game. An update takes a copy of the game or team
+ * (under the lock of its canonical instance), the copies are merged into the database every flush interval
+ * (and on shutdown) in one transaction, so the flush never reads an instance a REST thread is changing.
+ * The last copy is taken after the last change, a newer copy replaces a pending one.
+ * A game is loaded together with its teams (one fetch join query).
+ * So a button press no longer waits for a database round trip before the board is updated.
+ *
+ * The store runs outside a transaction, every load and merge of the {@link DAO} has its own,
+ * so the canonical instances are always detached.
+ *
+ * @author Stephan Janssen
+ */
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@Startup
+@Singleton
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class LiveGameStore {
+
+    private static final Logger LOGGER = Logger.getLogger(LiveGameStore.class.getName());
+
+    static final int FLUSH_INTERVAL_IN_MILLI = 500;
+
+    // The clean games are dropped when there are more games in memory
+    static final int MAX_GAMES = 64;
+
+    private final ConcurrentMap<Long, Game> games = new ConcurrentHashMap<Long, Game>();
+
+    private final ConcurrentMap<Long, Team> teams = new ConcurrentHashMap<Long, Team>();
+
+    // The copies to merge with the next flush
+    private final ConcurrentMap<Long, Game> dirtyGames = new ConcurrentHashMap<Long, Game>();
+
+    private final ConcurrentMap<Long, Team> dirtyTeams = new ConcurrentHashMap<Long, Team>();
+
+    // Statistics
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong merges = new AtomicLong();
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+
+    private ScheduledFuture<?> flusher;
+
+    @Inject
+    private DAO dao;
+
+    @Resource
+    private ManagedScheduledExecutorService ses;
+
+    @PostConstruct
+    public void init() {
+        flusher = ses.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, FLUSH_INTERVAL_IN_MILLI, FLUSH_INTERVAL_IN_MILLI, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (flusher != null) {
+            flusher.cancel(false);
+        }
+        flush();
+    }
+
+    /**
+     * @param id the game id
+     * @return the canonical game, loaded from the database the first time
+     */
+    public Game findGame(final long id) {
+        final Game game = games.get(id);
+        if (game != null) {
+            return game;
+        }
+
+        final Game found = dao.queryFindById(Game.class, "game.findWithTeams", id);
+        loads.incrementAndGet();
+        return found == null ? null : register(found);
+    }
+
+    /**
+     * @param id the team id
+     * @return the canonical team, loaded from the database the first time
+     */
+    public Team findTeam(final long id) {
+        final Team team = teams.get(id);
+        if (team != null) {
+            return team;
+        }
+
+        final Team found = dao.find(Team.class, id);
+        loads.incrementAndGet();
+        return found == null ? null : register(found);
+    }
+
+    /**
+     * @param teamId the team id
+     * @return the canonical game of the team when it's in memory, otherwise null
+     */
+    public Game findGameOfTeam(final long teamId) {
+        for (Game game : games.values()) {
+            if ((game.getTeamA() != null && game.getTeamA().getId() == teamId) ||
+                (game.getTeamB() != null && game.getTeamB().getId() == teamId)) {
+                return game;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param game a game read from the database
+     * @return the canonical game when it's in memory, otherwise the given game
+     */
+    public Game live(final Game game) {
+        final Game live = games.get(game.getId());
+        return live == null ? game : live;
+    }
+
+    /**
+     * Mark the game dirty, it's persisted with the next flush.
+     * The state of another instance than the canonical one (for example read from the database) is copied into it,
+     * the canonical instance keeps its teams.
+     *
+     * @param game the game, normally the canonical game as returned by find
+     */
+    public void update(final Game game) {
+        final Game live = register(game);
+        synchronized (live) {
+            if (live != game) {
+                copy(game, live);
+            }
+
+            final Game dirty = new Game();
+            copy(live, dirty);
+            dirty.setTeamA(live.getTeamA());
+            dirty.setTeamB(live.getTeamB());
+            dirtyGames.put(live.getId(), dirty);
+        }
+        updates.incrementAndGet();
+    }
+
+    public void update(final Team team) {
+        final Team live = register(team);
+        synchronized (live) {
+            if (live != team) {
+                copy(team, live);
+            }
+
+            final Team dirty = new Team();
+            copy(live, dirty);
+            dirtyTeams.put(live.getId(), dirty);
+        }
+        updates.incrementAndGet();
+    }
+
+    /**
+     * Forget the game and its teams, pending changes are dropped.
+     *
+     * @param id the game id
+     */
+    public void remove(final long id) {
+        final Game game = games.remove(id);
+        dirtyGames.remove(id);
+
+        if (game != null) {
+            removeTeam(game.getTeamA());
+            removeTeam(game.getTeamB());
+        }
+    }
+
+    /**
+     * Merge the dirty games and teams into the database in one transaction,
+     * or each in its own transaction when that fails.
+     */
+    public synchronized void flush() {
+        if (!dirtyTeams.isEmpty() || !dirtyGames.isEmpty()) {
+            final List<Object> dirty = new ArrayList<Object>(dirtyTeams.size() + dirtyGames.size());
+            collect(dirtyTeams, teams, dirty);
+            collect(dirtyGames, games, dirty);
+
+            try {
+                dao.updateAll(dirty);
+                merges.addAndGet(dirty.size());
+                transactions.incrementAndGet();
+
+            } catch (RuntimeException e) {
+                LOGGER.warning("Unable to persist " + dirty.size() + " changes at once: " + e.getMessage());
+                markDirty(dirty);
+                flush(dirtyTeams, teams);
+                flush(dirtyGames, games);
+            }
+        }
+
+        if (games.size() > MAX_GAMES) {
+            evictCleanGames();
+        }
+    }
+
+    public String getStatistics() {
+        return new StringBuilder()
+                .append("games=").append(games.size())
+                .append(", teams=").append(teams.size())
+                .append(", dirty=").append(dirtyGames.size() + dirtyTeams.size())
+                .append(", updates=").append(updates.get())
+                .append(", merges=").append(merges.get())
+                .append(", transactions=").append(transactions.get())
+                .append(", loads=").append(loads.get())
+                .append(", failures=").append(failures.get()).toString();
+    }
+
+    private <E> void collect(final ConcurrentMap<Long, E> dirty, final Map<Long, E> entities, final List<Object> collected) {
+        for (Map.Entry<Long, E> entry : dirty.entrySet()) {
+            // A copy taken meanwhile stays for the next flush
+            if (dirty.remove(entry.getKey(), entry.getValue()) && entities.containsKey(entry.getKey())) {
+                collected.add(entry.getValue());
+            }
+        }
+    }
+
+    private void markDirty(final List<Object> entities) {
+        for (Object entity : entities) {
+            if (entity instanceof Team) {
+                dirtyTeams.putIfAbsent(((Team) entity).getId(), (Team) entity);
+            } else {
+                dirtyGames.putIfAbsent(((Game) entity).getId(), (Game) entity);
+            }
+        }
+    }
+
+    private <E> void flush(final ConcurrentMap<Long, E> dirty, final Map<Long, E> entities) {
+        for (Map.Entry<Long, E> entry : dirty.entrySet()) {
+            final Long id = entry.getKey();
+            final E entity = entry.getValue();
+            if (!dirty.remove(id, entity) || !entities.containsKey(id)) {
+                continue;
+            }
+
+            try {
+                dao.update(entity);
+                merges.incrementAndGet();
+                transactions.incrementAndGet();
+
+            } catch (RuntimeException e) {
+                // Try again next time, unless there is a newer copy
+                dirty.putIfAbsent(id, entity);
+                failures.incrementAndGet();
+                LOGGER.warning("Unable to persist " + entity.getClass().getSimpleName() + " " + id + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The state of the game without its teams.
+     */
+    private static void copy(final Game from, final Game to) {
+        to.setId(from.getId());
+        to.setCreatedOn(from.getCreatedOn());
+        to.setUserName(from.getUserName());
+        to.setGameType(from.getGameType());
+        to.setAgeCategory(from.getAgeCategory());
+        to.setQuarter(from.getQuarter());
+        to.setClock(from.getClock());
+        to.setCourt(from.getCourt());
+        to.setMirrored(from.isMirrored());
+    }
+
+    private static void copy(final Team from, final Team to) {
+        to.setId(from.getId());
+        to.setName(from.getName());
+        to.setKey(from.getKey());
+        to.setScore(from.getScore());
+        to.setFouls(from.getFouls());
+        to.setTimeOut(from.getTimeOut());
+        to.setMirrored(from.isMirrored());
+    }
+
+    private Game register(final Game game) {
+        final Game existing = games.get(game.getId());
+        if (existing != null) {
+            return existing;
+        }
+
+        // The game shares the canonical team instances
+        if (game.getTeamA() != null) {
+            game.setTeamA(register(game.getTeamA()));
+        }
+        if (game.getTeamB() != null) {
+            game.setTeamB(register(game.getTeamB()));
+        }
+
+        final Game raced = games.putIfAbsent(game.getId(), game);
+        return raced == null ? game : raced;
+    }
+
+    private Team register(final Team team) {
+        final Team existing = teams.putIfAbsent(team.getId(), team);
+        return existing == null ? team : existing;
+    }
+
+    private void removeTeam(final Team team) {
+        if (team != null) {
+            teams.remove(team.getId());
+            dirtyTeams.remove(team.getId());
+        }
+    }
+
+    private void evictCleanGames() {
+        final Iterator<Game> iterator = games.values().iterator();
+        while (iterator.hasNext()) {
+            final Game game = iterator.next();
+
+            if (!dirtyGames.containsKey(game.getId()) &&
+                !isDirty(game.getTeamA()) &&
+                !isDirty(game.getTeamB())) {
+
+                iterator.remove();
+                removeTeam(game.getTeamA());
+                removeTeam(game.getTeamB());
+            }
+        }
+    }
+
+    private boolean isDirty(final Team team) {
+        return team != null && dirtyTeams.containsKey(team.getId());
+    }
+}
@@ -9,6 +9,9 @@ import javax.ejb.Singleton;
 import javax.inject.Inject;
 
 /**
+ * The teams being played are kept in memory by the {@link LiveGameStore}, their updates are written behind
+ * and journaled (see {@link GameJournal}) so they survive a reboot.
+ *
  * @author Stephan Janssen
  */
 @Singleton
@@ -18,6 +21,15 @@ public class TeamDAO {
     @Inject
     private DAO dao;
 
+    @Inject
+    private LiveGameStore liveGameStore;
+
+    @Inject
+    private GameJournal gameJournal;
+
+    @Inject
+    private GameCatalog gameCatalog;
+
     public Team create(final String name, final TeamType key, final boolean mirrored) {
         final Team team = new Team();
         team.setKey(key.toString());
@@ -27,12 +39,24 @@ public class TeamDAO {
     }
 
     public Team find(long id) {
-        return dao.find(Team.class, id);
+        return liveGameStore.findTeam(gameJournal.resolve(id));
     }
 
     public Team update(final Team team) {
-        team.setScore(team.getScore());
-        team.setFouls(team.getFouls());
-        return dao.update(team);
+        liveGameStore.update(team);
+        gameJournal.updated(team);
+        gameCatalog.changed();
+        return team;
+    }
+
+    /**
+     * Update both teams of a game at once, for example when the fouls or timeouts are reset.
+     */
+    public void update(final Team teamA, final Team teamB) {
+        liveGameStore.update(teamA);
+        liveGameStore.update(teamB);
+        gameJournal.updated(teamA);
+        gameJournal.updated(teamB);
+        gameCatalog.changed();
     }
 }
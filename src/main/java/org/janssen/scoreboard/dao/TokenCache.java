@@ -0,0 +1,215 @@
+package org.janssen.scoreboard.dao;
+
+import org.janssen.scoreboard.model.Token;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The valid tokens of the {@link TokenDAO}, so authorising a REST call is a hash lookup instead of a query.
+ *
+ * A token expires its time to live after it was created. When the cache is full the expired entries
+ * are evicted first (and everything when that doesn't help). As long as no valid token was evicted
+ * the cache is complete : a token which isn't cached doesn't exist (or expired).
+ *
+ * @author Stephan Janssen
+ */
+public class TokenCache {
+
+    static final int MAX_ENTRIES = 1024;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private final long timeToLiveInMilli;
+
+    private final int maxEntries;
+
+    private volatile boolean complete;
+
+    // Statistics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public TokenCache(final long timeToLiveInMilli) {
+        this(timeToLiveInMilli, MAX_ENTRIES);
+    }
+
+    TokenCache(final long timeToLiveInMilli, final int maxEntries) {
+        this.timeToLiveInMilli = timeToLiveInMilli;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param value the token value
+     * @return the cached token or null when unknown or expired
+     */
+    public Token get(final String value) {
+        final Entry entry = entries.get(value);
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(value, entry);
+            evictions.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.token;
+    }
+
+    /**
+     * @param token the token, ignored when it expired
+     */
+    public void put(final Token token) {
+        if (token == null || token.getValue() == null) {
+            return;
+        }
+
+        final Entry entry = new Entry(token, expiresAt(token));
+        if (entry.isExpired(System.currentTimeMillis())) {
+            return;
+        }
+
+        if (entries.size() >= maxEntries) {
+            evict();
+        }
+        entries.put(token.getValue(), entry);
+    }
+
+    /**
+     * @param token the token
+     * @return true when the token lived longer than the time to live
+     */
+    public boolean isExpired(final Token token) {
+        return expiresAt(token) <= System.currentTimeMillis();
+    }
+
+    public void invalidate(final String value) {
+        if (value != null) {
+            entries.remove(value);
+        }
+    }
+
+    /**
+     * @param id the token id
+     */
+    public void invalidate(final long id) {
+        final Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().token.getId() == id) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the number of expired tokens removed
+     */
+    public int evictExpired() {
+        final long now = System.currentTimeMillis();
+        int evicted = 0;
+
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().isExpired(now) && entries.remove(entry.getKey(), entry.getValue())) {
+                evicted++;
+            }
+        }
+        evictions.addAndGet(evicted);
+        return evicted;
+    }
+
+    /**
+     * @return the valid tokens
+     */
+    public List<Token> tokens() {
+        final long now = System.currentTimeMillis();
+        final List<Token> tokens = new ArrayList<Token>(entries.size());
+
+        for (Entry entry : entries.values()) {
+            if (!entry.isExpired(now)) {
+                tokens.add(entry.token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * @return true when every valid token is cached
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void setComplete(final boolean complete) {
+        this.complete = complete;
+    }
+
+    public void clear() {
+        entries.clear();
+        complete = false;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public String getStatistics() {
+        return new StringBuilder()
+                .append("size=").append(entries.size())
+                .append(", complete=").append(complete)
+                .append(", hits=").append(hits.get())
+                .append(", misses=").append(misses.get())
+                .append(", evictions=").append(evictions.get()).toString();
+    }
+
+    private long expiresAt(final Token token) {
+        final long createdOn = token.getCreatedOn() == null ? System.currentTimeMillis() : token.getCreatedOn().getTime();
+        return createdOn + timeToLiveInMilli;
+    }
+
+    private void evict() {
+        evictExpired();
+
+        if (entries.size() >= maxEntries) {
+            // Valid tokens are dropped, the database has to be asked again
+            complete = false;
+            evictions.addAndGet(entries.size());
+            entries.clear();
+        }
+    }
+
+    private static class Entry {
+
+        private final Token token;
+
+        private final long expiresAt;
+
+        Entry(final Token token, final long expiresAt) {
+            this.token = token;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(final long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -2,42 +2,169 @@ package org.janssen.scoreboard.dao;
 
 import org.janssen.scoreboard.model.Token;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
 import javax.ejb.Lock;
 import javax.ejb.LockType;
 import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
 
 /**
+ * The tokens are looked up for every REST call, so the valid tokens are kept in memory (see {@link TokenCache}).
+ *
+ * A token expires a day (-Dscoreboard.token.ttl.hours) after it was created,
+ * the expired tokens are deleted in bulk every sweep interval.
+ *
  * @author Stephan Janssen
  */
+@Startup
 @Singleton
 @Lock(LockType.READ)
 public class TokenDAO {
 
+    private static final Logger LOGGER = Logger.getLogger(TokenDAO.class.getName());
+
+    static final long TIME_TO_LIVE_IN_MILLI = TimeUnit.HOURS.toMillis(Long.getLong("scoreboard.token.ttl.hours", 24));
+
+    static final int SWEEP_INTERVAL_IN_MINUTES = 15;
+
+    // The list shows the newest tokens
+    static final int MAX_LISTED = 100;
+
+    private static final Comparator<Token> NEWEST_FIRST = new Comparator<Token>() {
+        @Override
+        public int compare(final Token one, final Token other) {
+            return other.getCreatedOn().compareTo(one.getCreatedOn());
+        }
+    };
+
     @Inject
     private DAO dao;
 
+    @Resource
+    private ManagedScheduledExecutorService ses;
+
+    private final TokenCache cache = new TokenCache(TIME_TO_LIVE_IN_MILLI);
+
+    private final AtomicLong swept = new AtomicLong();
+
+    private ScheduledFuture<?> sweeper;
+
+    @PostConstruct
+    public void init() {
+        for (Token token : dao.queryFindByCreation(Token.class, "token.list", expiredOn(), -1, -1)) {
+            cache.put(token);
+        }
+        cache.setComplete(true);
+
+        sweeper = ses.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sweep();
+            }
+        }, SWEEP_INTERVAL_IN_MINUTES, SWEEP_INTERVAL_IN_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (sweeper != null) {
+            sweeper.cancel(false);
+        }
+    }
+
     public Token create(final Token token) {
-        return dao.create(token);
+        final Token created = dao.create(token);
+        cache.put(created);
+        return created;
     }
 
+    /**
+     * @param token the token value
+     * @return the token, or null when unknown or expired
+     */
     public Token find(final String token) {
+        if (token == null) {
+            return null;
+        }
+
+        final Token cachedToken = cache.get(token);
+        if (cachedToken != null) {
+            return cachedToken;
+        }
+
+        if (cache.isComplete()) {
+            return null;
+        }
 
         final List<Token> tokens = dao.queryFindByToken("token.find", token);
 
-        if (tokens.size() == 0) {
+        if (tokens.size() == 0 || cache.isExpired(tokens.get(0))) {
             return null;
         } else {
+            cache.put(tokens.get(0));
             return tokens.get(0);
         }
     }
 
+    /**
+     * @param token the token
+     * @return true when less than half of its time to live has passed, so it can be handed out again
+     */
+    public boolean isFresh(final Token token) {
+        return token.getCreatedOn() != null &&
+               System.currentTimeMillis() - token.getCreatedOn().getTime() < TIME_TO_LIVE_IN_MILLI / 2;
+    }
+
+    /**
+     * @return the valid tokens, newest first
+     */
     public List<Token> listTokens() {
-        return dao.find(Token.class, "select t from Token t", 0, 100);
+        final List<Token> tokens = cache.isComplete() ? cache.tokens() :
+                new ArrayList<Token>(dao.queryFindByCreation(Token.class, "token.list", expiredOn(), -1, -1));
+
+        Collections.sort(tokens, NEWEST_FIRST);
+        return tokens.size() > MAX_LISTED ? tokens.subList(0, MAX_LISTED) : tokens;
     }
 
     public void delete(long id) {
+        cache.invalidate(id);
         dao.delete(Token.class, id);
     }
+
+    /**
+     * Delete the expired tokens.
+     */
+    public void sweep() {
+        try {
+            final int deleted = dao.queryDeleteByCreation("token.deleteExpired", expiredOn());
+            cache.evictExpired();
+            swept.addAndGet(deleted);
+
+            if (deleted > 0) {
+                LOGGER.info(deleted + " expired tokens deleted");
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warning("Unable to delete the expired tokens: " + e.getMessage());
+        }
+    }
+
+    public String getCacheStatistics() {
+        return cache.getStatistics() + ", swept=" + swept.get();
+    }
+
+    private static Date expiredOn() {
+        return new Date(System.currentTimeMillis() - TIME_TO_LIVE_IN_MILLI);
+    }
 }
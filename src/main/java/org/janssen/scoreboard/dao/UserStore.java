@@ -0,0 +1,160 @@
+package org.janssen.scoreboard.dao;
+
+import org.janssen.scoreboard.model.User;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * The users (scorers) of config.properties, parsed once into an immutable map.
+ *
+ * The users file is reloaded when it changes on disk, a login never reads the file.
+ * Start with -Dscoreboard.users=/path/to/users.properties to use a file outside the application.
+ *
+ * @author Stephan Janssen
+ */
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@Startup
+@Singleton
+public class UserStore {
+
+    private static final Logger LOGGER = Logger.getLogger(UserStore.class.getName());
+
+    private static final String CONFIG_PROPERTIES = "org/janssen/scoreboard/resources/config.properties";
+
+    static final int RELOAD_CHECK_IN_SECONDS = 10;
+
+    private volatile Map<String, User> users = Collections.emptyMap();
+
+    // The users file, null when it isn't a file on disk (and can't change)
+    private File file;
+
+    private long lastModified;
+
+    private ScheduledFuture<?> reloader;
+
+    @Resource
+    private ManagedScheduledExecutorService ses;
+
+    @PostConstruct
+    public void init() {
+        file = findFile();
+        load();
+
+        if (file != null) {
+            reloader = ses.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    if (file.lastModified() != lastModified) {
+                        load();
+                    }
+                }
+            }, RELOAD_CHECK_IN_SECONDS, RELOAD_CHECK_IN_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (reloader != null) {
+            reloader.cancel(false);
+        }
+    }
+
+    /**
+     * @param userName the user name
+     * @return the user, or null when unknown
+     */
+    public User find(final String userName) {
+        return users.get(userName);
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    synchronized void load() {
+        final Properties properties = new Properties();
+
+        InputStream in = null;
+        try {
+            if (file != null) {
+                lastModified = file.lastModified();
+                in = new FileInputStream(file);
+            } else {
+                in = getClass().getClassLoader().getResourceAsStream(CONFIG_PROPERTIES);
+            }
+
+            if (in == null) {
+                LOGGER.warning("No users found, " + CONFIG_PROPERTIES + " is missing");
+                return;
+            }
+            properties.load(in);
+
+        } catch (IOException e) {
+            // Keep the users we have
+            LOGGER.warning("Unable to load the users: " + e.getMessage());
+            return;
+
+        } finally {
+            close(in);
+        }
+
+        final Map<String, User> loaded = new HashMap<String, User>();
+        for (String userName : properties.stringPropertyNames()) {
+            try {
+                loaded.put(userName, new User(userName, properties.getProperty(userName)));
+
+            } catch (RuntimeException e) {
+                LOGGER.warning("Invalid user " + userName + " skipped");
+            }
+        }
+
+        users = Collections.unmodifiableMap(loaded);
+        LOGGER.info(loaded.size() + " users loaded");
+    }
+
+    private File findFile() {
+        final String path = System.getProperty("scoreboard.users");
+        if (path != null) {
+            return new File(path);
+        }
+
+        final URL url = getClass().getClassLoader().getResource(CONFIG_PROPERTIES);
+        if (url != null && "file".equals(url.getProtocol())) {
+            try {
+                return new File(url.toURI());
+            } catch (URISyntaxException e) {
+                LOGGER.warning("Users file " + url + " can't be watched");
+            }
+        }
+        return null;
+    }
+
+    private static void close(final InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+}
@@ -16,12 +16,15 @@
  */
 package org.janssen.scoreboard.model;
 
+import org.apache.openjpa.persistence.jdbc.Index;
+
 import javax.persistence.*;
 import java.util.Date;
 
 @MappedSuperclass
 public abstract class DatedModel extends Model {
 
+    @Index
     @Column(name = "createdOn", nullable = false)
     @Temporal(TemporalType.TIMESTAMP)
     private Date createdOn;
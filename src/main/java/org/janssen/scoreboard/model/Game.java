@@ -3,6 +3,8 @@ package org.janssen.scoreboard.model;
 import org.janssen.scoreboard.model.type.AgeCategory;
 import org.janssen.scoreboard.model.type.GameType;
 
+import org.apache.openjpa.persistence.jdbc.Index;
+
 import javax.persistence.*;
 import javax.xml.bind.annotation.XmlRootElement;
 import java.text.SimpleDateFormat;
@@ -15,13 +17,18 @@ import static org.janssen.scoreboard.service.util.Constants.*;
  */
 @Entity
 @NamedQueries({
-        @NamedQuery(name = "game.list", query = "select g from Game g where g.createdOn > :oneDayOld"),
+        @NamedQuery(name = "game.list", query = "select g from Game g join fetch g.teamA join fetch g.teamB where g.createdOn > :oneDayOld"),
+
+        @NamedQuery(name = "game.findWithTeams", query = "select g from Game g join fetch g.teamA join fetch g.teamB where g.id = :id"),
 
-        @NamedQuery(name = "game.count", query = "select count(g) from Game g")
+        @NamedQuery(name = "game.count", query = "select count(g) from Game g"),
+
+        @NamedQuery(name = "game.findByTeam", query = "select g.id from Game g where g.teamA.id = :teamId or g.teamB.id = :teamId")
 })
 @XmlRootElement(name = "game")
 public class Game extends DatedModel {
 
+    @Index
     private String userName;
 
     @OneToOne
@@ -40,10 +47,19 @@ public class Game extends DatedModel {
 
     private Integer clock = TEN_MINUTES_IN_SECONDS;
 
+    @Index
     private String court;
 
     private Boolean mirrored = false;
 
+    // SimpleDateFormat isn't thread safe, one per thread instead of one per toString
+    private static final ThreadLocal<SimpleDateFormat> CREATED_ON_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("HH:mm:ss EEE, d MMM yyyy");
+        }
+    };
+
     public Team getTeamA() {
         return teamA;
     }
@@ -126,8 +142,7 @@ public class Game extends DatedModel {
 
     public String toString() {
 
-        final SimpleDateFormat simpleDateFormat = new SimpleDateFormat("HH:mm:ss EEE, d MMM yyyy");
-        final String formatDate = simpleDateFormat.format(getCreatedOn());
+        final String formatDate = CREATED_ON_FORMAT.get().format(getCreatedOn());
 
         return new StringBuilder()
                .append(getId()).append(") ")
@@ -14,12 +14,17 @@ import javax.xml.bind.annotation.XmlTransient;
  */
 @Entity
 @NamedQueries({
-        @NamedQuery(name = "token.find", query = "select t from Token t where t.value = :tokenValue")
+        @NamedQuery(name = "token.find", query = "select t from Token t where t.value = :tokenValue"),
+
+        @NamedQuery(name = "token.list", query = "select t from Token t where t.createdOn > :oneDayOld"),
+
+        @NamedQuery(name = "token.deleteExpired", query = "delete from Token t where t.createdOn <= :expiredOn")
 })
 @XmlRootElement(name = "token")
 public class Token extends DatedModel {
 
     @XmlTransient
+    @Column(unique = true)
     private String value;
 
     @Enumerated(EnumType.STRING)
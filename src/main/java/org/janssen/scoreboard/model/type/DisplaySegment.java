@@ -0,0 +1,81 @@
+package org.janssen.scoreboard.model.type;
+
+/**
+ * The independent segments of the scoreboard, each one is updated with its own score option.
+ * The timeouts have no option (the GPIO LEDs show them), they're only part of the full scoreboard frame.
+ * The clock digits show either minutes and seconds or (in the final minute) seconds and tenths.
+ *
+ * @author Stephan Janssen
+ */
+public enum DisplaySegment {
+
+    HOME_SCORE("-h%03d", "home"),
+
+    VISITORS_SCORE("-v%03d", "visitors"),
+
+    FOULS_HOME("-a%d", "foulsHome"),
+
+    FOULS_VISITORS("-b%d", "foulsVisitors"),
+
+    CLOCK("-k%02d%02d", "clock") {
+        @Override
+        public String toOption(final int seconds) {
+            return String.format(getFormat(), seconds / 60, seconds % 60);
+        }
+    },
+
+    // The final minute in tenths of a second, shown on the clock digits as "ss.t"
+    CLOCK_TENTHS("-e%03d", "tenths"),
+
+    TWENTY_FOUR("-t%02d", "twentyFour"),
+
+    // Shows the quarter and flashes the player fouls, so it isn't streamed (see StreamBroadcaster)
+    QUARTER("-q%d", null),
+
+    TIMEOUTS_HOME(null, "timeoutsHome"),
+
+    TIMEOUTS_VISITORS(null, "timeoutsVisitors");
+
+    private String format;
+
+    // The name used in the live stream, null when the segment isn't streamed
+    private String key;
+
+    DisplaySegment(String format, String key) {
+        this.format = format;
+        this.key = key;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the segment using the same digits on the board (or null)
+     */
+    public DisplaySegment getSibling() {
+        switch (this) {
+            case CLOCK:
+                return CLOCK_TENTHS;
+            case CLOCK_TENTHS:
+                return CLOCK;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param value the value to show
+     * @return the score option, for example -h012 (or null when the segment has no option)
+     */
+    public String toOption(final int value) {
+        if (format == null) {
+            return null;
+        }
+        return String.format(format, value);
+    }
+}
@@ -1,21 +1,25 @@
 package org.janssen.scoreboard.service;
 
 import org.janssen.scoreboard.dao.TokenDAO;
+import org.janssen.scoreboard.dao.UserStore;
 import org.janssen.scoreboard.model.Login;
 import org.janssen.scoreboard.model.Token;
 import org.janssen.scoreboard.model.User;
 import org.janssen.scoreboard.service.util.PasswordHash;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
 import javax.ejb.Singleton;
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.io.IOException;
-import java.io.InputStream;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
-import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 import static org.janssen.scoreboard.service.util.ResponseUtil.*;
@@ -23,32 +27,51 @@ import static org.janssen.scoreboard.service.util.ResponseUtil.*;
 /**
  * TODO This post should happen over HTTPS but we don't have an SSL certificate to do this :(
  *
+ * The users come from the {@link UserStore}, a login is one password hash check.
+ * A user logging in again from the same device gets the token issued before, while it has more than
+ * half of its time to live left (so it doesn't expire during the game).
+ *
+ * The logins run in parallel (the password hash check is slow on the Pi), the issued tokens are a concurrent map.
+ * Two logins from the same device at the same time can both create a token, both tokens are valid.
+ *
  * @author Stephan Janssen
  */
 @Singleton
+@Lock(LockType.READ)
 @Path("/api/auth")
 @Produces({MediaType.TEXT_PLAIN})
 public class AuthenticateService {
 
     private static final Logger LOGGER = Logger.getLogger(AuthenticateService.class.getName());
 
-    private static final String CONFIG_PROPERTIES = "org/janssen/scoreboard/resources/config.properties";
+    // The issued tokens are forgotten when there are more devices
+    static final int MAX_DEVICES = 256;
 
     @Inject
     private TokenDAO tokenDAO;
 
+    @Inject
+    private UserStore userStore;
+
+    // The token value per user and device
+    private final ConcurrentMap<String, String> issuedTokens = new ConcurrentHashMap<String, String>();
+
     @Consumes(MediaType.APPLICATION_JSON)
     @POST
     @Path("/payload")
-    public Response loginByPayload(Login login) {
-        return verifyLogin(login.getUsername(), login.getPassword());
+    public Response loginByPayload(Login login,
+                                   @QueryParam("device") String device,
+                                   @Context HttpServletRequest request) {
+        return verifyLogin(login.getUsername(), login.getPassword(), device, request);
     }
 
     @Consumes(MediaType.APPLICATION_JSON)
     @POST
     @Path("/login")
     public Response verifyLogin(@QueryParam("username") String username,
-                                @QueryParam("password") String password) {
+                                @QueryParam("password") String password,
+                                @QueryParam("device") String device,
+                                @Context HttpServletRequest request) {
 
         if (username == null || username.length() == 0) {
             LOGGER.info("Username not defined:"+username);
@@ -60,21 +83,36 @@ public class AuthenticateService {
         }
 
         try {
-            final String user = findUser(username);
-            if (user == null) {
+            final User foundUser = userStore.find(username);
+            if (foundUser == null) {
                 LOGGER.info("User does not exist:"+username);
                 return conflict("User does not exist");
             }
 
-            final User foundUser = new User(username, user);
             final String hashedPassword = foundUser.getPassword();
 
             if (PasswordHash.validatePassword(password, hashedPassword)) {
+                final String deviceKey = username + "@" + (device != null ? device :
+                                                           request != null ? request.getRemoteAddr() : "");
+
+                // Same user, same device : reuse the token when it lives long enough
+                final String issued = issuedTokens.get(deviceKey);
+                final Token issuedToken = issued == null ? null : tokenDAO.find(issued);
+                if (issuedToken != null && tokenDAO.isFresh(issuedToken)) {
+                    LOGGER.info("Token reused for " + deviceKey);
+                    return ok(issued);
+                }
+
                 final Token token = new Token(UUID.randomUUID().toString());
                 token.setFullName(foundUser.getFullName());
                 token.setGameType(foundUser.getGameType());
                 tokenDAO.create(token);
 
+                if (issuedTokens.size() >= MAX_DEVICES) {
+                    issuedTokens.clear();
+                }
+                issuedTokens.put(deviceKey, token.getValue());
+
                 LOGGER.info("Token created: "+token.getValue());
 
                 return ok(token.getValue());
@@ -83,8 +121,6 @@ public class AuthenticateService {
                 return unauthorized("Invalid login credentials");
             }
 
-        } catch (IOException e) {
-            e.printStackTrace();
         } catch (InvalidKeySpecException e) {
             e.printStackTrace();
         } catch (NoSuchAlgorithmException e) {
@@ -103,39 +139,10 @@ public class AuthenticateService {
             return badRequest("Username not defined");
         }
 
-        try {
-            final String user = findUser(username);
-            if (user == null) {
-                return conflict("User does not exist");
-            }
-
-            final User foundUser = new User(username, user);
-
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (userStore.find(username) == null) {
+            return conflict("User does not exist");
         }
 
         return conflict("Authorisation failed");
     }
-
-    /**
-     * Find user in property file.
-     *
-     * @param username
-     * @return
-     * @throws IOException
-     */
-    private String findUser(final String username) throws IOException {
-        Properties prop = new Properties();
-
-        final InputStream resourceAsStream =
-                getClass().getClassLoader().getResourceAsStream(CONFIG_PROPERTIES);
-
-            if (resourceAsStream != null) {
-                prop.load(resourceAsStream);
-                return prop.getProperty(username);
-            } else {
-                return null;
-            }
-    }
 }
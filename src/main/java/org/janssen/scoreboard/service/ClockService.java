@@ -5,6 +5,8 @@ import org.janssen.scoreboard.dao.GameDAO;
 import org.janssen.scoreboard.dao.TokenDAO;
 import org.janssen.scoreboard.model.Game;
 import org.janssen.scoreboard.model.type.GameType;
+import org.janssen.scoreboard.service.command.GameCommandLog;
+import org.janssen.scoreboard.service.command.GameState;
 
 import javax.ejb.EJB;
 import javax.inject.Inject;
@@ -38,6 +40,9 @@ public class ClockService {
     @EJB
     private GameClockController clockController;
 
+    @Inject
+    private GameCommandLog commandLog;
+
     @GET
     @Path("/{gameId}")
     public Response getClock(@PathParam("gamedId") Long gameId) {
@@ -126,8 +131,13 @@ public class ClockService {
                 LOGGER.info(msg);
                 return badRequest(msg);
             } else {
+                final GameState before = GameState.of(game);
+
                 game.setClock(clockController.getSeconds());
                 gameDAO.update(game);
+
+                // The time played is replayed, never undone
+                commandLog.recordPlayed("clock.stop", before, game);
                 LOGGER.info("OK");
                 return ok();
             }
@@ -164,10 +174,14 @@ public class ClockService {
                     return badRequest("Can't be higher than 4 min. for kids basket");
                 }
 
+                final GameState before = GameState.of(game);
+
                 clock+=seconds;
                 game.setClock(clock);
                 gameDAO.update(game);
 
+                commandLog.record("clock.inc", before, game);
+
                 clockController.setSeconds(clock);
                 return ok();
             } else {
@@ -199,10 +213,14 @@ public class ClockService {
 
             Integer clock = game.getClock();
             if (clock - seconds >= 0) {
+                final GameState before = GameState.of(game);
+
                 clock -= seconds;
                 game.setClock(clock);
                 gameDAO.update(game);
 
+                commandLog.record("clock.dec", before, game);
+
                 clockController.setSeconds(clock);
                 return ok();
             } else {
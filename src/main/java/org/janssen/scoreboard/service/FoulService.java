@@ -9,6 +9,8 @@ import org.janssen.scoreboard.model.Team;
 import org.janssen.scoreboard.model.Token;
 import org.janssen.scoreboard.model.type.TeamType;
 import org.janssen.scoreboard.service.broadcast.ProducerService;
+import org.janssen.scoreboard.service.command.GameCommandLog;
+import org.janssen.scoreboard.service.command.GameState;
 
 import javax.inject.Inject;
 import javax.ws.rs.*;
@@ -48,6 +50,9 @@ public class FoulService {
     @Inject
     private ProducerService producerService;
 
+    @Inject
+    private GameCommandLog commandLog;
+
     @GET
     @Path("/{teamId}")
     public Response getFouls(@PathParam("teamId") Long teamId) {
@@ -85,14 +90,19 @@ public class FoulService {
             return badRequest("Game does not exist");
         }
 
+        final GameState before = GameState.of(game);
+
         final Team teamA = game.getTeamA();
         teamA.setFouls(0);
-        update(teamA, 0);
 
         final Team teamB = game.getTeamB();
         teamB.setFouls(0);
-        update(teamB, 0);
 
+        teamDAO.update(teamA, teamB);
+        show(teamA, 0);
+        show(teamB, 0);
+
+        commandLog.record("fouls.reset", before, game);
         return ok();
     }
 
@@ -122,6 +132,9 @@ public class FoulService {
 
         int fouls = team.getFouls();
         if (fouls < 5) {
+            final Game game = gameDAO.findByTeam(teamId);
+            final GameState before = GameState.of(game);
+
             team.setFouls(++fouls);
 
             if (LOGGER.isLoggable(Level.INFO)) {
@@ -130,6 +143,8 @@ public class FoulService {
 
             update(team, totalFouls);
 
+            commandLog.record("fouls.inc", before, game);
+
         } else {
             // 5 Team fouls so only show player fouls
             device.setPlayerFoul(totalFouls);
@@ -160,8 +175,13 @@ public class FoulService {
         int fouls = team.getFouls();
 
         if (fouls > 0) {
+            final Game game = gameDAO.findByTeam(teamId);
+            final GameState before = GameState.of(game);
+
             team.setFouls(--fouls);
             update(team, 0);
+
+            commandLog.record("fouls.dec", before, game);
             return ok();
         } else {
             return badRequest("Fouls can't be negative");
@@ -169,6 +189,11 @@ public class FoulService {
     }
 
     private void update(final Team team, final int totalPersonalFouls) {
+        teamDAO.update(team);
+        show(team, totalPersonalFouls);
+    }
+
+    private void show(final Team team, final int totalPersonalFouls) {
 
         LOGGER.info("team.isMirrored? " + team.isMirrored());
 
@@ -188,8 +213,6 @@ public class FoulService {
                 LOGGER.info("FoulService mirroring is turned OFF");
         }
 
-        teamDAO.update(team);
-
         device.setFoul(team);
 
         if (totalPersonalFouls != 0) {
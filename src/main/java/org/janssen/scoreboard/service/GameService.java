@@ -4,20 +4,28 @@ import org.janssen.scoreboard.controller.DeviceController;
 import org.janssen.scoreboard.controller.GPIOController;
 import org.janssen.scoreboard.controller.GameClockController;
 import org.janssen.scoreboard.controller.TwentyFourClockController;
+import org.janssen.scoreboard.dao.GameCursor;
 import org.janssen.scoreboard.dao.GameDAO;
 import org.janssen.scoreboard.dao.TeamDAO;
 import org.janssen.scoreboard.dao.TokenDAO;
 import org.janssen.scoreboard.model.Game;
 import org.janssen.scoreboard.model.Team;
 import org.janssen.scoreboard.model.Token;
+import org.janssen.scoreboard.model.type.AgeCategory;
 import org.janssen.scoreboard.model.type.GPIOType;
+import org.janssen.scoreboard.model.type.GameType;
 import org.janssen.scoreboard.model.type.TeamType;
 import org.janssen.scoreboard.service.broadcast.ProducerService;
+import org.janssen.scoreboard.service.broadcast.StreamBroadcaster;
+import org.janssen.scoreboard.service.command.GameCommand;
+import org.janssen.scoreboard.service.command.GameCommandLog;
+import org.janssen.scoreboard.service.command.GameState;
 
 import javax.ejb.EJB;
 import javax.ejb.Singleton;
 import javax.inject.Inject;
 import javax.ws.rs.*;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.util.List;
@@ -43,6 +51,8 @@ public class GameService {
     private static final String MIRRORED = "mirrored";
     private static final String FIRST = "first";
     private static final String MAX = "max";
+    private static final String AFTER = "after";
+    private static final String NEXT_CURSOR = "X-Next-Cursor";
 
     @EJB
     private GameDAO gameDAO;
@@ -68,6 +78,12 @@ public class GameService {
     @Inject
     private ProducerService producerService;
 
+    @EJB
+    private StreamBroadcaster streamBroadcaster;
+
+    @EJB
+    private GameCommandLog commandLog;
+
     @POST
     @Path("/")
     public Response createGame(@QueryParam(TOKEN) String token,
@@ -141,6 +157,8 @@ public class GameService {
             producerService.newGame();
         }
 
+        streamBroadcaster.setLiveGame(game.getId());
+
         //
         // Possible fix for countdown clock when reached 0
         //
@@ -152,31 +170,92 @@ public class GameService {
         return ok();
     }
 
+    /**
+     * The games of the last day, or with a cursor (after) or a filter (court, age, type) a page of the game history.
+     * The cursor of the next history page is returned in the X-Next-Cursor header.
+     */
     @Path("/list")
     @GET
-    public List<Game> listGames(@QueryParam(FIRST) @DefaultValue("0") int first,
-                                @QueryParam(MAX) @DefaultValue("20") int max) {
-        return gameDAO.list(first, max);
+    public Response listGames(@QueryParam(FIRST) @DefaultValue("0") int first,
+                              @QueryParam(MAX) @DefaultValue("20") int max,
+                              @QueryParam(AFTER) String after,
+                              @QueryParam("court") String court,
+                              @QueryParam("age") Integer ageCategory,
+                              @QueryParam("type") Integer type) {
+
+        if (after == null && court == null && ageCategory == null && type == null) {
+            return ok(new GenericEntity<List<Game>>(gameDAO.list(first, max)) {});
+        }
+
+        final List<Game> games;
+        try {
+            games = history(after, court, ageCategory, type, max);
+        } catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        }
+        return historyPage(new GenericEntity<List<Game>>(games) {}, games, max);
     }
 
     @Produces("text/*")
     @Path("/list")
     @GET
-    public String listGamesAsText(@QueryParam(FIRST) @DefaultValue("0") int first,
-                                  @QueryParam(MAX) @DefaultValue("20") int max) {
+    public Response listGamesAsText(@QueryParam(FIRST) @DefaultValue("0") int first,
+                                    @QueryParam(MAX) @DefaultValue("20") int max,
+                                    @QueryParam(AFTER) String after,
+                                    @QueryParam("court") String court,
+                                    @QueryParam("age") Integer ageCategory,
+                                    @QueryParam("type") Integer type) {
+
+        if (after == null && court == null && ageCategory == null && type == null) {
+            final String games = gameDAO.listAsText(first, max);
+            return ok(games == null ? "No games" : games);
+        }
 
-        final List<Game> games = gameDAO.list(first, max);
+        final List<Game> games;
+        try {
+            games = history(after, court, ageCategory, type, max);
+        } catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        }
 
-        if (games != null && games.size() > 0) {
-            StringBuilder builder = new StringBuilder();
+        if (games.isEmpty()) {
+            return ok("No games");
+        }
 
-            for (final Game game : games) {
-                builder.append(game).append("\n");
-            }
-            return builder.toString();
-        } else {
-            return "No games";
+        final StringBuilder builder = new StringBuilder();
+        for (final Game game : games) {
+            builder.append(game).append("\n");
+        }
+        return historyPage(builder.toString(), games, max);
+    }
+
+    private List<Game> history(final String after,
+                               final String court,
+                               final Integer ageCategory,
+                               final Integer type,
+                               final int max) {
+
+        final GameCursor cursor = after == null || after.isEmpty() ?
+                new GameCursor(System.currentTimeMillis() + 1, Long.MAX_VALUE) : GameCursor.parse(after);
+
+        if (ageCategory != null && (ageCategory < 0 || ageCategory >= AgeCategory.values().length)) {
+            throw new IllegalArgumentException("Invalid age category " + ageCategory);
+        }
+        if (type != null && (type < 0 || type >= GameType.values().length)) {
+            throw new IllegalArgumentException("Invalid game type " + type);
         }
+
+        return gameDAO.history(cursor, court,
+                               ageCategory == null ? null : AgeCategory.values()[ageCategory],
+                               type == null ? null : GameType.values()[type],
+                               max);
+    }
+
+    private Response historyPage(final Object entity, final List<Game> games, final int max) {
+        if (games.size() < max || games.isEmpty()) {
+            return ok(entity);
+        }
+        return Response.ok(entity).header(NEXT_CURSOR, GameCursor.after(games.get(games.size() - 1))).build();
     }
 
     @Path("/{id}")
@@ -229,7 +308,151 @@ public class GameService {
         }
 
         gameDAO.delete(id);
+        commandLog.remove(id);
         device.clearBoard();
         return gone();
     }
+
+    /**
+     * Undo the last scorer action (score, fouls, timeouts, quarter or clock) of the game.
+     *
+     * @param id    the game id
+     * @param token the token
+     * @return the game state after the undo
+     */
+    @Path("/{id}/undo")
+    @PUT
+    public Response undo(@PathParam(ID) Long id,
+                         @QueryParam(TOKEN) String token) {
+        return applyCommand(id, token, true);
+    }
+
+    /**
+     * Redo the last undone scorer action of the game.
+     *
+     * @param id    the game id
+     * @param token the token
+     * @return the game state after the redo
+     */
+    @Path("/{id}/redo")
+    @PUT
+    public Response redo(@PathParam(ID) Long id,
+                         @QueryParam(TOKEN) String token) {
+        return applyCommand(id, token, false);
+    }
+
+    /**
+     * The state of the game at an earlier moment, for the instant replay of the officials.
+     *
+     * @param id the game id
+     * @param at the moment in epoch milliseconds
+     * @return the game state at that moment, 410 when the moment is before the oldest kept command
+     */
+    @Path("/{id}/replay")
+    @GET
+    public Response replay(@PathParam(ID) Long id,
+                           @QueryParam("at") long at) {
+        if (id == null || id == 0) {
+            return badRequest("Game Id can't be null or zero");
+        }
+
+        final Game game = gameDAO.find(id);
+        if (game == null) {
+            return badRequest("Game does not exist");
+        }
+
+        final GameState state = commandLog.replay(GameState.of(game), at);
+        if (state == null) {
+            return gone("Replay only goes back to " + commandLog.getOldestTimestamp(id));
+        }
+
+        return ok(state.toJson());
+    }
+
+    @Produces("text/*")
+    @Path("/{id}/commands")
+    @GET
+    public String listCommands(@PathParam(ID) Long id) {
+        final StringBuilder builder = new StringBuilder();
+        for (GameCommand command : commandLog.list(id)) {
+            builder.append(command).append("\n");
+        }
+        return builder.length() == 0 ? "No commands" : builder.toString();
+    }
+
+    private Response applyCommand(final Long id, final String token, final boolean undo) {
+        if (id == null || id == 0) {
+            return badRequest("Game Id can't be null or zero");
+        }
+
+        final Token foundToken = tokenDAO.find(token);
+        if (foundToken == null) {
+            return unauthorized("Invalid token");
+        }
+
+        final Game game = gameDAO.find(id);
+        if (game == null) {
+            return badRequest("Game does not exist");
+        }
+
+        // The command is checked and the cursor moved in one step, another scorer may be recording
+        final GameCommand command;
+        try {
+            final boolean running = clockController.isRunning();
+            final int clock = clockController.getSeconds();
+            command = undo ? commandLog.undo(id, running, clock) : commandLog.redo(id, running, clock);
+        } catch (IllegalStateException e) {
+            return badRequest(e.getMessage());
+        }
+
+        if (command == null) {
+            return badRequest(undo ? "Nothing to undo" : "Nothing to redo");
+        }
+
+        final GameState state = GameState.of(game);
+        if (undo) {
+            command.undo(state);
+        } else {
+            command.redo(state);
+        }
+        state.applyTo(game);
+
+        teamDAO.update(game.getTeamA(), game.getTeamB());
+        gameDAO.update(game);
+
+        if (command.changes(GameCommand.Field.CLOCK)) {
+            clockController.setSeconds(game.getClock());
+        }
+        showState(game);
+
+        LOGGER.info((undo ? "Undo " : "Redo ") + command);
+        return ok(state.toJson());
+    }
+
+    /**
+     * Show the (corrected) game on the board, the timeout LEDs and the mirrored board.
+     */
+    private void showState(final Game game) {
+        final Team teamA = game.getTeamA();
+        final Team teamB = game.getTeamB();
+        final int seconds = clockController.getSeconds();
+
+        gpioController.setLed(GPIOType.TIME_OUT_H1, teamA.getTimeOut() >= 1);
+        gpioController.setLed(GPIOType.TIME_OUT_H2, teamA.getTimeOut() >= 2);
+        gpioController.setLed(GPIOType.TIME_OUT_V1, teamB.getTimeOut() >= 1);
+        gpioController.setLed(GPIOType.TIME_OUT_V2, teamB.getTimeOut() >= 2);
+
+        if (game.isMirrored()) {
+            producerService.printHomeScore(teamA.getScore());
+            producerService.printVisitorsScore(teamB.getScore());
+            producerService.printFoulsA(teamA.getFouls());
+            producerService.printFoulsB(teamB.getFouls());
+            producerService.printHomeTimeout(teamA.getTimeOut());
+            producerService.printVisitorsTimeout(teamB.getTimeOut());
+            producerService.printQuarter(game.getQuarter());
+            producerService.printTimeInSeconds(seconds);
+        }
+
+        device.showGame(game, seconds);
+    }
 }
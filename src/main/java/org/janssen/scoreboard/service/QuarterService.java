@@ -12,6 +12,8 @@ import org.janssen.scoreboard.model.Token;
 import org.janssen.scoreboard.model.type.GPIOType;
 import org.janssen.scoreboard.model.type.GameType;
 import org.janssen.scoreboard.service.broadcast.ProducerService;
+import org.janssen.scoreboard.service.command.GameCommandLog;
+import org.janssen.scoreboard.service.command.GameState;
 
 import javax.inject.Inject;
 import javax.ws.rs.*;
@@ -56,6 +58,9 @@ public class QuarterService {
     @Inject
     protected GameClockController gameClockController;
 
+    @Inject
+    protected GameCommandLog commandLog;
+
     @GET
     @Path("/{gameId}")
     public Response getQuarter(@PathParam("gameId") Long gameId) {
@@ -106,10 +111,12 @@ public class QuarterService {
             return badRequest("Wedstrijd niet gevonden, start een 'New Game'!!");
         }
 
+        final GameState before = GameState.of(game);
+
         // Verify how many quarters mini football can have... 2 ?
         game.incrementQuarter();
 
-        resetTeamFouls(game);
+        boolean teamsChanged = resetTeamFouls(game);
 
         // Reset the clock based on game type
         gameDAO.setGameClock(game);
@@ -118,28 +125,34 @@ public class QuarterService {
         if ((game.getGameType() == GameType.BASKET && game.getQuarter() == 3) ||
             (game.getGameType() == GameType.BASKET_KIDS && game.getQuarter() == 5)) {
             resetTimeoutLeds(game);
+            teamsChanged = true;
+        }
+
+        if (teamsChanged) {
+            teamDAO.update(game.getTeamA(), game.getTeamB());
         }
 
         // Show the 24s LEDs
         gpioController.showTwentyFourSeconds(true);
 
         update(game);
+
+        commandLog.record("quarter.inc", before, game);
         return ok();
     }
 
-    private void resetTeamFouls(final Game game) {
+    /**
+     * @return true when the fouls are reset, the teams still need to be updated
+     */
+    private boolean resetTeamFouls(final Game game) {
         if (game.getGameType() == GameType.BASKET ||
             (game.getGameType() == GameType.BASKET_KIDS &&  game.getQuarter() % 2 == 0)) {   // every 2 quarters
 
-            final Team teamA = game.getTeamA();
-            final Team teamB = game.getTeamB();
-
-            teamA.setFouls(0);
-            teamB.setFouls(0);
-
-            teamDAO.update(teamA);
-            teamDAO.update(teamB);
+            game.getTeamA().setFouls(0);
+            game.getTeamB().setFouls(0);
+            return true;
         }
+        return false;
     }
 
     @PUT
@@ -165,6 +178,7 @@ public class QuarterService {
         }
 
         if (game.getQuarter() > 1) {
+            final GameState before = GameState.of(game);
 
             game.decrementQuarter();
 
@@ -172,8 +186,11 @@ public class QuarterService {
 
             resetTimeoutLeds(game);
 
+            teamDAO.update(game.getTeamA(), game.getTeamB());
+
             update(game);
 
+            commandLog.record("quarter.dec", before, game);
             return ok();
         } else {
             return badRequest("Quarter kan niet negatief zijn");
@@ -188,6 +205,9 @@ public class QuarterService {
 
             // Reset game clock slave board
             producerService.printTimeInSeconds(game.getClock());
+
+            // The slave board snapshot holds the quarter too
+            producerService.printQuarter(game.getQuarter());
         }
 
         gameDAO.update(game);
@@ -198,8 +218,13 @@ public class QuarterService {
 
         // Reset game clock
         device.setClockOnly(game.getClock());
+
+        device.publishQuarter(game.getId(), game.getQuarter());
     }
 
+    /**
+     * Reset the timeouts, the teams still need to be updated.
+     */
     private void resetTimeoutLeds(final Game game) {
 
         LOGGER.info("game.isMirrored? " + game.isMirrored());
@@ -215,11 +240,11 @@ public class QuarterService {
 
         final Team teamA = game.getTeamA();
         teamA.setTimeOut(0);
-        teamDAO.update(teamA);
+        device.setTimeouts(teamA);
 
         final Team teamB = game.getTeamB();
         teamB.setTimeOut(0);
-        teamDAO.update(teamB);
+        device.setTimeouts(teamB);
 
         gpioController.setLed(GPIOType.TIME_OUT_H1, false);
         gpioController.setLed(GPIOType.TIME_OUT_H2, false);
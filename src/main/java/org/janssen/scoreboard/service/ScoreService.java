@@ -5,12 +5,16 @@ package org.janssen.scoreboard.service;
  */
 
 import org.janssen.scoreboard.controller.DeviceController;
+import org.janssen.scoreboard.dao.GameDAO;
 import org.janssen.scoreboard.dao.TeamDAO;
 import org.janssen.scoreboard.dao.TokenDAO;
+import org.janssen.scoreboard.model.Game;
 import org.janssen.scoreboard.model.Team;
 import org.janssen.scoreboard.model.Token;
 import org.janssen.scoreboard.model.type.TeamType;
 import org.janssen.scoreboard.service.broadcast.ProducerService;
+import org.janssen.scoreboard.service.command.GameCommandLog;
+import org.janssen.scoreboard.service.command.GameState;
 
 import javax.inject.Inject;
 import javax.ws.rs.*;
@@ -38,6 +42,9 @@ public class ScoreService {
     @Inject
     private TeamDAO teamDAO;
 
+    @Inject
+    private GameDAO gameDAO;
+
     @Inject
     private TokenDAO tokenDAO;
 
@@ -47,6 +54,9 @@ public class ScoreService {
     @Inject
     private ProducerService producerService;
 
+    @Inject
+    private GameCommandLog commandLog;
+
     @GET
     @Path("/{teamId}")
     public Response getScore(@PathParam("teamId") Long teamId) {
@@ -89,10 +99,14 @@ public class ScoreService {
         }
 
         if (team.getScore() + points <= 999) {
+            final Game game = gameDAO.findByTeam(teamId);
+            final GameState before = GameState.of(game);
 
             team.setScore(team.getScore() + points);
             update(team);
 
+            commandLog.record("score.inc", before, game);
+
             if (LOGGER.isLoggable(Level.INFO)) {
                 LOGGER.info(String.format("Set score %d for team %s", team.getScore(), team.getName()));
             }
@@ -125,8 +139,13 @@ public class ScoreService {
         }
 
         if (team.getScore() - points >= 0) {
+            final Game game = gameDAO.findByTeam(teamId);
+            final GameState before = GameState.of(game);
+
             team.setScore(team.getScore() - points);
             update(team);
+
+            commandLog.record("score.dec", before, game);
             return ok(team.getScore());
         } else {
             return badRequest("Score can't be negative");
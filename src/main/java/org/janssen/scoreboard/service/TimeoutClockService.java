@@ -1,15 +1,20 @@
 package org.janssen.scoreboard.service;
 
+import org.janssen.scoreboard.controller.DeviceController;
 import org.janssen.scoreboard.controller.GPIOController;
 import org.janssen.scoreboard.controller.GameClockController;
 import org.janssen.scoreboard.controller.TimeoutClockController;
+import org.janssen.scoreboard.dao.GameDAO;
 import org.janssen.scoreboard.dao.TeamDAO;
 import org.janssen.scoreboard.dao.TokenDAO;
+import org.janssen.scoreboard.model.Game;
 import org.janssen.scoreboard.model.Team;
 import org.janssen.scoreboard.model.Token;
 import org.janssen.scoreboard.model.type.GPIOType;
 import org.janssen.scoreboard.model.type.TeamType;
 import org.janssen.scoreboard.service.broadcast.ProducerService;
+import org.janssen.scoreboard.service.command.GameCommandLog;
+import org.janssen.scoreboard.service.command.GameState;
 
 import javax.ejb.EJB;
 import javax.ejb.Singleton;
@@ -41,12 +46,21 @@ public class TimeoutClockService {
     @Inject
     private TeamDAO teamDAO;
 
+    @Inject
+    private GameDAO gameDAO;
+
+    @Inject
+    private GameCommandLog commandLog;
+
     @EJB
     private TimeoutClockController timeoutClockController;
 
     @Inject
     private GPIOController gpioController;
 
+    @Inject
+    private DeviceController device;
+
     @Inject
     private ProducerService producerService;
 
@@ -99,6 +113,9 @@ public class TimeoutClockService {
             return badRequest("Team does not exist");
         }
 
+        final Game game = gameDAO.findByTeam(teamId);
+        final GameState before = GameState.of(game);
+
         if (team.getTimeOut() + 1 > 2) {
             team.setTimeOut(0);                         // reset timeout counter
         } else {
@@ -107,6 +124,9 @@ public class TimeoutClockService {
 
         teamDAO.update(team);                       // save team
         setTimeOutLed(team);                        // set timeout led
+        device.setTimeouts(team);                   // keep the scoreboard frame in sync
+
+        commandLog.record("timeout.inc", before, game);
         return ok();
     }
 
@@ -0,0 +1,323 @@
+package org.janssen.scoreboard.service;
+
+import org.janssen.scoreboard.dao.TokenDAO;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.inject.Inject;
+import javax.ws.rs.core.Response;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static org.janssen.scoreboard.service.util.Constants.SECRET_TOKEN;
+import static org.janssen.scoreboard.service.util.ResponseUtil.badRequest;
+
+/**
+ * A persistent TCP connection for the 24s black box, so a button press is one line instead of an HTTP request.
+ *
+ * Every line is "sequence command [argument]", answered with "sequence status [message]"
+ * where the status is the HTTP status the REST call of {@link TwentyFourClockService} would give, for example
+ *
+ * 1 HELLO CAFEBABE     ->     1 200
+ * 2 START              ->     2 200
+ * 3 INC 3              ->     3 200
+ * 4 PING 2             ->     4 200        (the argument is the round trip the box measured in ms)
+ * 5 STOP 1444397523042 ->     5 200        (stopped as of the press, in server epoch millis)
+ *
+ * The commands are START [at], STOP [at], RESET, FOURTEEN, INC [seconds], DEC [seconds], SHOW, TIMEOUT, RUNNING,
+ * STOPPED and PING. The sequence numbers must go up, a repeated one is answered with 409 and not executed.
+ * Start with -Dscoreboard.channel.port=0 to disable the channel.
+ *
+ * @author Stephan Janssen
+ */
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@Startup
+@Singleton
+public class TwentyFourChannel {
+
+    private static final Logger LOGGER = Logger.getLogger(TwentyFourChannel.class.getName());
+
+    static final int PORT = Integer.getInteger("scoreboard.channel.port", 8024);
+
+    // One black box per court, the others are spare
+    static final int MAX_CONNECTIONS = 4;
+
+    // The box pings every 10 seconds
+    static final int IDLE_TIMEOUT_IN_MILLI = 30000;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final List<Connection> connections = new CopyOnWriteArrayList<Connection>();
+
+    private volatile ServerSocket serverSocket;
+
+    // Statistics
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong processingNanos = new AtomicLong();
+    private volatile long lastRoundTrip = -1;
+
+    @EJB
+    private TwentyFourClockService twentyFourClockService;
+
+    @EJB
+    private TimeoutClockService timeoutClockService;
+
+    @Inject
+    private TokenDAO tokenDAO;
+
+    // The connections live as long as the box is on, so they get their own threads instead of the executors
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    @PostConstruct
+    public void init() {
+        if (PORT <= 0) {
+            LOGGER.info("24s channel disabled");
+            return;
+        }
+
+        try {
+            serverSocket = new ServerSocket(PORT);
+        } catch (IOException e) {
+            LOGGER.warning("24s channel not available on port " + PORT + ": " + e.getMessage());
+            return;
+        }
+
+        threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }).start();
+
+        LOGGER.info("24s channel listening on port " + PORT);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        close(serverSocket);
+        serverSocket = null;
+
+        for (Connection connection : connections) {
+            close(connection.socket);
+        }
+    }
+
+    public String getStatistics() {
+        final long count = commands.get();
+
+        return new StringBuilder()
+                .append("connections=").append(connections.size())
+                .append(", accepted=").append(accepted.get())
+                .append(", commands=").append(count)
+                .append(", rejected=").append(rejected.get())
+                .append(", avgProcessingMicros=").append(count == 0 ? 0 :
+                        TimeUnit.NANOSECONDS.toMicros(processingNanos.get() / count))
+                .append(", lastRoundTripMillis=").append(lastRoundTrip).toString();
+    }
+
+    private void accept() {
+        final ServerSocket server = serverSocket;
+
+        while (server != null && !server.isClosed()) {
+            try {
+                final Socket socket = server.accept();
+                accepted.incrementAndGet();
+
+                if (connections.size() >= MAX_CONNECTIONS) {
+                    LOGGER.warning("24s channel refused " + socket.getRemoteSocketAddress() + ", too many connections");
+                    close(socket);
+                    continue;
+                }
+
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(IDLE_TIMEOUT_IN_MILLI);
+
+                final Connection connection = new Connection(socket);
+                connections.add(connection);
+
+                threadFactory.newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(connection);
+                    }
+                }).start();
+
+            } catch (SocketException e) {
+                // Closed by destroy()
+                return;
+            } catch (IOException e) {
+                LOGGER.warning("24s channel accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(final Connection connection) {
+        LOGGER.info("24s channel connected to " + connection.socket.getRemoteSocketAddress());
+
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(connection.socket.getInputStream(), ASCII));
+            final Writer writer = new OutputStreamWriter(connection.socket.getOutputStream(), ASCII);
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final long start = System.nanoTime();
+
+                final String reply = handle(connection, line.trim());
+                writer.write(reply);
+                writer.write('\n');
+                writer.flush();
+
+                commands.incrementAndGet();
+                processingNanos.addAndGet(System.nanoTime() - start);
+            }
+
+        } catch (SocketTimeoutException e) {
+            LOGGER.info("24s channel idle, closing " + connection.socket.getRemoteSocketAddress());
+        } catch (IOException e) {
+            LOGGER.fine("24s channel closed: " + e.getMessage());
+        } finally {
+            connections.remove(connection);
+            close(connection.socket);
+        }
+    }
+
+    /**
+     * @param connection the connection of the line
+     * @param line       the command line
+     * @return the reply line
+     */
+    String handle(final Connection connection, final String line) {
+        final String[] parts = line.split(" +");
+
+        final long sequence;
+        try {
+            sequence = Long.parseLong(parts[0]);
+        } catch (NumberFormatException e) {
+            rejected.incrementAndGet();
+            return "0 400 Invalid line";
+        }
+
+        if (parts.length < 2) {
+            rejected.incrementAndGet();
+            return sequence + " 400 Command missing";
+        }
+
+        if (sequence <= connection.lastSequence) {
+            rejected.incrementAndGet();
+            return sequence + " 409 Already received " + connection.lastSequence;
+        }
+        connection.lastSequence = sequence;
+
+        final String command = parts[1].toUpperCase();
+        final String argument = parts.length > 2 ? parts[2] : null;
+
+        if ("HELLO".equals(command)) {
+            connection.token = argument;
+            return reply(sequence, isValid(argument) ? 200 : 401);
+        }
+
+        if ("PING".equals(command)) {
+            if (argument != null) {
+                try {
+                    lastRoundTrip = Long.parseLong(argument);
+                } catch (NumberFormatException ignore) {
+                }
+            }
+            return reply(sequence, 200);
+        }
+
+        try {
+            return reply(sequence, execute(command, argument, connection.token).getStatus());
+
+        } catch (NumberFormatException e) {
+            rejected.incrementAndGet();
+            return sequence + " 400 Invalid argument " + argument;
+        } catch (RuntimeException e) {
+            LOGGER.warning("24s channel command " + line + " failed: " + e.getMessage());
+            return reply(sequence, 500);
+        }
+    }
+
+    private Response execute(final String command, final String argument, final String token) {
+        switch (command) {
+            case "START":
+                return twentyFourClockService.startClock(token, argument == null ? null : Long.valueOf(argument));
+            case "STOP":
+                return twentyFourClockService.stopClock(token, argument == null ? null : Long.valueOf(argument));
+            case "RESET":
+                return twentyFourClockService.resetClock(token);
+            case "FOURTEEN":
+                return twentyFourClockService.setFourteenSeconds(token);
+            case "INC":
+                return twentyFourClockService.incClock(token, argument == null ? 1 : Integer.parseInt(argument));
+            case "DEC":
+                return twentyFourClockService.decClock(token, argument == null ? 1 : Integer.parseInt(argument));
+            case "SHOW":
+                return twentyFourClockService.setVisible(token);
+            case "TIMEOUT":
+                return timeoutClockService.startClock(token);
+            case "RUNNING":
+                return twentyFourClockService.isRunning();
+            case "STOPPED":
+                return twentyFourClockService.isStopped();
+            default:
+                rejected.incrementAndGet();
+                return badRequest("Unknown command " + command);
+        }
+    }
+
+    private boolean isValid(final String token) {
+        return SECRET_TOKEN.equals(token) || tokenDAO.find(token) != null;
+    }
+
+    private static String reply(final long sequence, final int status) {
+        return sequence + " " + status;
+    }
+
+    private static void close(final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    static class Connection {
+
+        private final Socket socket;
+
+        // Only used by the thread of the connection
+        private long lastSequence;
+
+        private String token;
+
+        Connection(final Socket socket) {
+            this.socket = socket;
+        }
+    }
+}
@@ -49,15 +49,25 @@ public class TwentyFourClockService {
         return ok(twentyFourClockController.getTwentyFourSeconds());
     }
 
+    /**
+     * The server time, with millis=true in epoch millis so the 24s black box can synchronise its clock.
+     */
     @GET
     @Path("/date")
-    public Response getDate() {
+    public Response getDate(@QueryParam("millis") boolean millis) {
+        if (millis) {
+            return ok(System.currentTimeMillis());
+        }
         return ok(new Date().toString());
     }
 
+    /**
+     * @param at the moment the button was pressed in server epoch millis, or null to start now
+     */
     @PUT
     @Path("/start")
-    public Response startClock(@QueryParam("token") String token) {
+    public Response startClock(@QueryParam("token") String token,
+                               @QueryParam("at") Long at) {
 
         if (isInvalid(token)) return unauthorized("Invalid token");
 
@@ -68,7 +78,11 @@ public class TwentyFourClockService {
         timerOn = true;
 
         if (twentyFourClockController.isNotRunning()) {
-            twentyFourClockController.start();
+            if (at == null) {
+                twentyFourClockController.start();
+            } else {
+                twentyFourClockController.startAt(at);
+            }
             return ok();
 
         } else {
@@ -76,9 +90,13 @@ public class TwentyFourClockService {
         }
     }
 
+    /**
+     * @param at the moment the button was pressed in server epoch millis, or null to stop now
+     */
     @PUT
     @Path("/stop")
-    public Response stopClock(@QueryParam("token") String token) {
+    public Response stopClock(@QueryParam("token") String token,
+                              @QueryParam("at") Long at) {
 
         if (isInvalid(token)) return unauthorized("Invalid token");
 
@@ -90,7 +108,11 @@ public class TwentyFourClockService {
 
         if (twentyFourClockController.isRunning()) {
 
-            twentyFourClockController.stop();
+            if (at == null) {
+                twentyFourClockController.stop();
+            } else {
+                twentyFourClockController.stopAt(at);
+            }
             return ok();
 
         } else {
@@ -168,17 +190,20 @@ public class TwentyFourClockService {
 
     @PUT
     @Path("/inc")
-    public Response incClock(@QueryParam("token") String token) {
+    public Response incClock(@QueryParam("token") String token,
+                            @QueryParam("seconds") @DefaultValue("1") int seconds) {
 
         if (twentyFourClockController.isNotRunning() &&
             timeoutClockController.isNotRunning()) {
 
             if (isInvalid(token)) return unauthorized("Invalid token");
 
+            if (seconds < 1) return badRequest("Seconds must be positive");
+
             int twentyFourSeconds = twentyFourClockController.getTwentyFourSeconds();
 
             if (twentyFourSeconds < TWENTY_FOUR_SECONDS) {
-                twentyFourSeconds++;
+                twentyFourSeconds = Math.min(TWENTY_FOUR_SECONDS, twentyFourSeconds + seconds);
                 twentyFourClockController.setTwentyFourSeconds(twentyFourSeconds);
                 return ok();
             } else {
@@ -191,17 +216,20 @@ public class TwentyFourClockService {
 
     @PUT
     @Path("/dec")
-    public Response decClock(@QueryParam("token") String token) {
+    public Response decClock(@QueryParam("token") String token,
+                            @QueryParam("seconds") @DefaultValue("1") int seconds) {
 
         if (twentyFourClockController.isNotRunning() &&
             timeoutClockController.isNotRunning()) {
 
             if (isInvalid(token)) return unauthorized("Invalid token");
 
+            if (seconds < 1) return badRequest("Seconds must be positive");
+
             int twentyFourSeconds = twentyFourClockController.getTwentyFourSeconds();
 
             if (twentyFourSeconds > 1) {
-                twentyFourSeconds --;
+                twentyFourSeconds = Math.max(1, twentyFourSeconds - seconds);
                 twentyFourClockController.setTwentyFourSeconds(twentyFourSeconds);
                 return ok();
             } else {
@@ -1,11 +1,17 @@
 package org.janssen.scoreboard.service;
 
 import org.janssen.scoreboard.controller.DeviceController;
+import org.janssen.scoreboard.controller.GameClockController;
 import org.janssen.scoreboard.dao.GameDAO;
+import org.janssen.scoreboard.dao.GameCatalog;
+import org.janssen.scoreboard.dao.GameJournal;
+import org.janssen.scoreboard.dao.LiveGameStore;
 import org.janssen.scoreboard.dao.TokenDAO;
 import org.janssen.scoreboard.model.Game;
 import org.janssen.scoreboard.model.Token;
+import org.janssen.scoreboard.service.broadcast.StreamBroadcaster;
 
+import javax.ejb.EJB;
 import javax.ejb.Singleton;
 import javax.inject.Inject;
 import javax.ws.rs.*;
@@ -31,9 +37,27 @@ public class UtilService {
     @Inject
     private TokenDAO tokenDAO;
 
+    @Inject
+    private LiveGameStore liveGameStore;
+
+    @Inject
+    private GameJournal gameJournal;
+
+    @Inject
+    private GameCatalog gameCatalog;
+
     @Inject
     private DeviceController device;
 
+    @EJB
+    private GameClockController clockController;
+
+    @EJB
+    private StreamBroadcaster streamBroadcaster;
+
+    @EJB
+    private TwentyFourChannel twentyFourChannel;
+
 
     @Path("/ping")
     @GET
@@ -49,6 +73,48 @@ public class UtilService {
         return ok(version);
     }
 
+    @Path("/display")
+    @GET
+    public Response displayStatistics() {
+        return ok(device.getStatistics());
+    }
+
+    @Path("/stream")
+    @GET
+    public Response streamStatistics() {
+        return ok(streamBroadcaster.getStatistics());
+    }
+
+    @Path("/tokens")
+    @GET
+    public Response tokenStatistics() {
+        return ok(tokenDAO.getCacheStatistics());
+    }
+
+    @Path("/store")
+    @GET
+    public Response storeStatistics() {
+        return ok(liveGameStore.getStatistics());
+    }
+
+    @Path("/journal")
+    @GET
+    public Response journalStatistics() {
+        return ok(gameJournal.getStatistics());
+    }
+
+    @Path("/catalog")
+    @GET
+    public Response catalogStatistics() {
+        return ok(gameCatalog.getStatistics());
+    }
+
+    @Path("/channel")
+    @GET
+    public Response channelStatistics() {
+        return ok(twentyFourChannel.getStatistics());
+    }
+
     @Path("/clear")
     @GET
     public Response clearGameboard() {
@@ -73,15 +139,9 @@ public class UtilService {
         final Game game = gameDAO.find(gameId);
 
         if (game != null) {
-            device.setClockOnly(game.getClock());
-
-            device.setScore(game.getTeamA());
-            device.setScore(game.getTeamB());
-
-            device.setPlayerFoul(game.getQuarter());
+            final int seconds = clockController.isRunning() ? clockController.getSeconds() : game.getClock();
 
-            device.setFoul(game.getTeamA());
-            device.setFoul(game.getTeamB());
+            device.showGame(game, seconds);
 
             return ok();
         } else {
@@ -5,15 +5,21 @@ package org.janssen.scoreboard.service.broadcast;
  */
 public abstract class AbstractBroadcaster {
 
-    public final String NEW_GAME = "/game";
-    public final String PERSONAL_FOUL = "/fouls";
-    public final String FOULS_A = "/foulsA";
-    public final String FOULS_B = "/foulsB";
-    public final String QUARTER = "/quarter";
-    public final String HOME = "/home";
-    public final String VISITORS = "/visitors";
-    public final String TIME = "/time";
-    public final String TIMEOUT_HOME = "/timeout/home";
-    public final String TIMEOUT_VISITORS = "/timeout/visitors";
+    public static final String NEW_GAME = "/game";
+    public static final String PERSONAL_FOUL = "/fouls";
+    public static final String FOULS_A = "/foulsA";
+    public static final String FOULS_B = "/foulsB";
+    public static final String QUARTER = "/quarter";
+    public static final String HOME = "/home";
+    public static final String VISITORS = "/visitors";
+    public static final String TIME = "/time";
+    public static final String TIMEOUT_HOME = "/timeout/home";
+    public static final String TIMEOUT_VISITORS = "/timeout/visitors";
+    public static final String BATCH = "/batch";
+    public static final String SNAPSHOT = "/snapshot";
+    public static final String STATUS = "/status";
+
+    // The consumer answers a batch with this when it missed one, the producer then sends a snapshot
+    public static final String RESYNC = "resync";
 
 }
@@ -3,12 +3,33 @@ package org.janssen.scoreboard.service.broadcast;
 import org.janssen.scoreboard.controller.DeviceController;
 import org.janssen.scoreboard.model.type.GPIOType;
 
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.util.EntityUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
 import javax.ejb.EJB;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
 import javax.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.janssen.scoreboard.service.util.ResponseUtil.badRequest;
+import static org.janssen.scoreboard.service.util.ResponseUtil.ok;
 
 /**
  * The broadcast service receives all the info of to set the scoreboard
@@ -26,14 +47,54 @@ import javax.ws.rs.core.MediaType;
  *
  * For example: 120140103409591
  *
+ * The master sends the changed fields in batches (see {@link MirrorMessage}), a batch with a sequence number
+ * lower than (or equal to) the last applied one of the same master run is stale and dropped.
+ * When a batch is missing (or the master restarted) the batch is answered with "resync" and the master
+ * sends a snapshot of the complete board. On startup the slave pulls that snapshot from the master
+ * given by the scoreboard.mirror.master system property (for example http://192.168.1.101:8080).
+ *
  * @author Stephan Janssen
  */
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@Startup
+@Singleton
 @Path("/api/broadcast/consumer")
 @Produces({MediaType.APPLICATION_JSON})
 public class ConsumerService extends AbstractBroadcaster {
 
+    private static final Logger LOGGER = Logger.getLogger(ConsumerService.class.getName());
+
+    static final String MASTER_PROPERTY = "scoreboard.mirror.master";
+
+    private static final String PRODUCER_SNAPSHOT = "/api/broadcast/producer/snapshot";
+
+    // Try to pull the snapshot for a minute after startup
+    private static final int PULL_ATTEMPTS = 12;
+    private static final int PULL_RETRY_IN_SECONDS = 5;
+    private static final int PULL_TIMEOUT_IN_MILLI = 2000;
+
     private static final int NO_TIMEOUTS = 0;
     private static final int ONE_TIMEOUT = 1;
+    private static final int TWO_TIMEOUTS = 2;
+
+    // The master run and the last applied sequence number of that run
+    private long epoch;
+    private long lastSequence;
+
+    // A batch went missing, every answer asks for a snapshot until one is applied
+    private boolean resyncNeeded = true;
+    private long resyncNeededSince = System.nanoTime();
+
+    // Statistics
+    private long applied;
+    private long stale;
+    private long gaps;
+    private long snapshots;
+    private long lastRecoveryInMilli = -1;
+    private long maxRecoveryInMilli = -1;
+
+    @Resource
+    private ManagedScheduledExecutorService ses;
 
     @Inject
     private DeviceController device;
@@ -41,6 +102,179 @@ public class ConsumerService extends AbstractBroadcaster {
     @EJB
     private org.janssen.scoreboard.controller.GPIOController GPIOController;
 
+    @PostConstruct
+    public void init() {
+        final String master = System.getProperty(MASTER_PROPERTY);
+
+        if (master != null && !master.isEmpty()) {
+            schedulePull(master, 1, 0);
+        }
+    }
+
+    @POST
+    @Path(BATCH)
+    @Consumes({MediaType.TEXT_PLAIN})
+    public synchronized Response consumeBatch(final String body) {
+        final MirrorMessage message;
+        try {
+            message = MirrorMessage.parse(body);
+        } catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        }
+
+        final boolean sameRun = message.getEpoch() == epoch;
+
+        if (sameRun && message.getSequence() <= lastSequence) {
+            stale++;
+            LOGGER.fine("Dropped stale mirror batch " + message.getSequence());
+
+        } else if (message.isSnapshot()) {
+            applySnapshot(message);
+
+        } else {
+            if (!sameRun || message.getSequence() > lastSequence + 1) {
+                // Missed a batch (or the master restarted), the newer values are applied anyway
+                gaps++;
+                markResyncNeeded();
+            }
+
+            epoch = message.getEpoch();
+            lastSequence = message.getSequence();
+            applied++;
+
+            apply(message);
+        }
+
+        return resyncNeeded ? ok(RESYNC) : ok();
+    }
+
+    @GET
+    @Path(STATUS)
+    @Produces({MediaType.TEXT_PLAIN})
+    public synchronized String getStatus() {
+        return new StringBuilder()
+                .append("epoch=").append(epoch)
+                .append(", sequence=").append(lastSequence)
+                .append(", resyncNeeded=").append(resyncNeeded)
+                .append(", applied=").append(applied)
+                .append(", stale=").append(stale)
+                .append(", gaps=").append(gaps)
+                .append(", snapshots=").append(snapshots)
+                .append(", lastRecoveryInMilli=").append(lastRecoveryInMilli)
+                .append(", maxRecoveryInMilli=").append(maxRecoveryInMilli).toString();
+    }
+
+    private void markResyncNeeded() {
+        if (!resyncNeeded) {
+            resyncNeeded = true;
+            resyncNeededSince = System.nanoTime();
+        }
+    }
+
+    private void applySnapshot(final MirrorMessage message) {
+        epoch = message.getEpoch();
+        lastSequence = message.getSequence();
+        snapshots++;
+
+        if (resyncNeeded) {
+            lastRecoveryInMilli = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - resyncNeededSince);
+            maxRecoveryInMilli = Math.max(maxRecoveryInMilli, lastRecoveryInMilli);
+            resyncNeeded = false;
+        }
+
+        apply(message);
+    }
+
+    /**
+     * A pulled snapshot carries the last sequence number sent by the master, so it's applied unless a newer batch arrived.
+     */
+    private synchronized void applyPulledSnapshot(final MirrorMessage message) {
+        if (message.getEpoch() != epoch || message.getSequence() >= lastSequence) {
+            applySnapshot(message);
+        }
+    }
+
+    private void schedulePull(final String master, final int attempt, final int delayInSeconds) {
+        ses.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!pullSnapshot(master) && attempt < PULL_ATTEMPTS) {
+                    schedulePull(master, attempt + 1, PULL_RETRY_IN_SECONDS);
+                }
+            }
+        }, delayInSeconds, TimeUnit.SECONDS);
+    }
+
+    private boolean pullSnapshot(final String master) {
+        final DefaultHttpClient httpclient = new DefaultHttpClient();
+        httpclient.getParams().setIntParameter("http.connection.timeout", PULL_TIMEOUT_IN_MILLI);
+        httpclient.getParams().setIntParameter("http.socket.timeout", PULL_TIMEOUT_IN_MILLI);
+
+        try {
+            final HttpResponse response = httpclient.execute(new HttpGet(master + PRODUCER_SNAPSHOT));
+            final String body = EntityUtils.toString(response.getEntity());
+
+            if (response.getStatusLine().getStatusCode() >= 300) {
+                LOGGER.warning("Mirror snapshot pull failed with status " + response.getStatusLine().getStatusCode());
+                return false;
+            }
+
+            applyPulledSnapshot(MirrorMessage.parse(body));
+            LOGGER.info("Mirror snapshot pulled from " + master);
+            return true;
+
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.warning("Mirror snapshot pull failed: " + e.getMessage());
+            return false;
+
+        } finally {
+            httpclient.getConnectionManager().shutdown();
+        }
+    }
+
+    private void apply(final MirrorMessage message) {
+        for (MirrorField field : MirrorField.values()) {
+            if (!message.hasValue(field)) {
+                continue;
+            }
+
+            final int value = message.getValue(field);
+
+            switch (field) {
+                case GAME:
+                    newMirroredBasketGame();
+                    break;
+                case HOME:
+                    printScoreHome(value);
+                    break;
+                case VISITORS:
+                    printScoreVisitors(value);
+                    break;
+                case FOULS_A:
+                    printFoulsHome(value);
+                    break;
+                case FOULS_B:
+                    printFoulsVisitors(value);
+                    break;
+                case TIMEOUT_HOME:
+                    printTimeoutHome(value);
+                    break;
+                case TIMEOUT_VISITORS:
+                    printTimeoutVisitors(value);
+                    break;
+                case TIME:
+                    printTime(value);
+                    break;
+                case QUARTER:
+                    printQuarter(value);
+                    break;
+                case PERSONAL_FOUL:
+                    printPersonalFouls(value);
+                    break;
+            }
+        }
+    }
+
     @POST
     @Path(NEW_GAME)
     public void newMirroredBasketGame() {
@@ -80,7 +314,7 @@ public class ConsumerService extends AbstractBroadcaster {
     @POST
     @Path(QUARTER)
     public void printQuarter(final int quarter) {
-        device.setPlayerFoul(quarter);
+        device.setQuarter(quarter);
     }
 
     @POST
@@ -101,18 +335,14 @@ public class ConsumerService extends AbstractBroadcaster {
         device.setClockOnly(seconds);
     }
 
+    /**
+     * Both LEDs are set, so a snapshot can also correct a timeout which was taken back.
+     */
     @POST
     @Path(TIMEOUT_HOME)
     public void printTimeoutHome(final int timeout) {
-
-        if (timeout == NO_TIMEOUTS) {
-            GPIOController.setLed(GPIOType.TIME_OUT_H1, false);
-            GPIOController.setLed(GPIOType.TIME_OUT_H2, false);
-        } else if (timeout == ONE_TIMEOUT) {
-            GPIOController.setLed(GPIOType.TIME_OUT_H1, true);
-        } else if (timeout > ONE_TIMEOUT) {
-            GPIOController.setLed(GPIOType.TIME_OUT_H2, true);
-        }
+        GPIOController.setLed(GPIOType.TIME_OUT_H1, timeout >= ONE_TIMEOUT);
+        GPIOController.setLed(GPIOType.TIME_OUT_H2, timeout >= TWO_TIMEOUTS);
     }
 
     @POST
@@ -120,13 +350,7 @@ public class ConsumerService extends AbstractBroadcaster {
     public void printTimeoutVisitors(final int timeout) {
 
         // Set visitors timeout LEDs
-        if (timeout == NO_TIMEOUTS) {
-            GPIOController.setLed(GPIOType.TIME_OUT_V1, false);
-            GPIOController.setLed(GPIOType.TIME_OUT_V2, false);
-        } else if (timeout == ONE_TIMEOUT) {
-            GPIOController.setLed(GPIOType.TIME_OUT_V1, true);
-        } else if (timeout > ONE_TIMEOUT) {
-            GPIOController.setLed(GPIOType.TIME_OUT_V2, true);
-        }
+        GPIOController.setLed(GPIOType.TIME_OUT_V1, timeout >= ONE_TIMEOUT);
+        GPIOController.setLed(GPIOType.TIME_OUT_V2, timeout >= TWO_TIMEOUTS);
     }
 }
@@ -0,0 +1,63 @@
+package org.janssen.scoreboard.service.broadcast;
+
+/**
+ * The fields mirrored to the slave scoreboard, a batch is applied in this order.
+ * A new game resets the slave board, so it goes first.
+ *
+ * @author Stephan Janssen
+ */
+public enum MirrorField {
+
+    GAME("game"),
+
+    HOME("home"),
+
+    VISITORS("visitors"),
+
+    FOULS_A("foulsA"),
+
+    FOULS_B("foulsB"),
+
+    TIMEOUT_HOME("timeoutHome"),
+
+    TIMEOUT_VISITORS("timeoutVisitors"),
+
+    TIME("time"),
+
+    QUARTER("quarter"),
+
+    // Shown on the quarter digit for a few seconds, so after the quarter
+    PERSONAL_FOUL("fouls");
+
+    private String key;
+
+    MirrorField(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * The new game and the personal fouls are events, all the other fields are part of the board state (snapshot).
+     *
+     * @return true when the field is part of a snapshot
+     */
+    public boolean isState() {
+        return this != GAME && this != PERSONAL_FOUL;
+    }
+
+    /**
+     * @param key the field key
+     * @return the field or null when unknown
+     */
+    public static MirrorField fromKey(final String key) {
+        for (MirrorField field : values()) {
+            if (field.key.equals(key)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,133 @@
+package org.janssen.scoreboard.service.broadcast;
+
+/**
+ * One batch of changed fields for the slave scoreboard, for example
+ *
+ * 1422540000000 42 home=12 time=345
+ *
+ * The epoch identifies the master run (it changes when the master restarts),
+ * the sequence number increments for every batch of that run.
+ * A snapshot carries the complete board state and is marked as such:
+ *
+ * 1422540000000 43 snapshot home=12 visitors=8 foulsA=2 foulsB=3 timeoutHome=1 timeoutVisitors=0 time=345 quarter=2
+ *
+ * @author Stephan Janssen
+ */
+public final class MirrorMessage {
+
+    public static final int NONE = Integer.MIN_VALUE;
+
+    private static final String SNAPSHOT = "snapshot";
+
+    private static final MirrorField[] FIELDS = MirrorField.values();
+
+    private final long epoch;
+
+    private final long sequence;
+
+    private final boolean snapshot;
+
+    // Indexed by the field ordinal, NONE when the field didn't change
+    private final int[] values;
+
+    public MirrorMessage(final long epoch, final long sequence, final int[] values) {
+        this(epoch, sequence, false, values);
+    }
+
+    public MirrorMessage(final long epoch, final long sequence, final boolean snapshot, final int[] values) {
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.snapshot = snapshot;
+        this.values = values;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @param field the field
+     * @return the value or NONE
+     */
+    public int getValue(final MirrorField field) {
+        return values[field.ordinal()];
+    }
+
+    public boolean hasValue(final MirrorField field) {
+        return values[field.ordinal()] != NONE;
+    }
+
+    /**
+     * @param text the message text
+     * @return the message
+     * @throws IllegalArgumentException when the text can't be parsed
+     */
+    public static MirrorMessage parse(final String text) {
+        if (text == null) {
+            throw new IllegalArgumentException("Empty mirror message");
+        }
+
+        final String[] tokens = text.trim().split("\\s+");
+        if (tokens.length < 2) {
+            throw new IllegalArgumentException("Mirror message without epoch and sequence: " + text);
+        }
+
+        final int[] values = new int[FIELDS.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = NONE;
+        }
+
+        try {
+            final long epoch = Long.parseLong(tokens[0]);
+            final long sequence = Long.parseLong(tokens[1]);
+            boolean snapshot = false;
+
+            for (int i = 2; i < tokens.length; i++) {
+                if (SNAPSHOT.equals(tokens[i])) {
+                    snapshot = true;
+                    continue;
+                }
+
+                final int separator = tokens[i].indexOf('=');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Wrong mirror field: " + tokens[i]);
+                }
+
+                // Skip the fields of a newer master
+                final MirrorField field = MirrorField.fromKey(tokens[i].substring(0, separator));
+                if (field != null) {
+                    values[field.ordinal()] = Integer.parseInt(tokens[i].substring(separator + 1));
+                }
+            }
+
+            return new MirrorMessage(epoch, sequence, snapshot, values);
+
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Wrong mirror message: " + text, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder text = new StringBuilder(64).append(epoch).append(' ').append(sequence);
+
+        if (snapshot) {
+            text.append(' ').append(SNAPSHOT);
+        }
+
+        for (MirrorField field : FIELDS) {
+            if (hasValue(field)) {
+                text.append(' ').append(field.getKey()).append('=').append(getValue(field));
+            }
+        }
+        return text.toString();
+    }
+}
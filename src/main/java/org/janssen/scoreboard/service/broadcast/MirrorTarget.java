@@ -0,0 +1,241 @@
+package org.janssen.scoreboard.service.broadcast;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.janssen.scoreboard.service.broadcast.AbstractBroadcaster.BATCH;
+import static org.janssen.scoreboard.service.broadcast.AbstractBroadcaster.RESYNC;
+
+/**
+ * One mirrored scoreboard (consumer) of the {@link ProducerService}.
+ *
+ * Every target has its own bounded queue of batches and its own sender, so a slow or dead
+ * scoreboard never delays the others. When the queue is full the oldest batch is dropped,
+ * the consumer notices the missing sequence number and asks for a snapshot.
+ * A failed batch is retried with an exponential backoff.
+ *
+ * @author Stephan Janssen
+ */
+public final class MirrorTarget {
+
+    private static final Logger LOGGER = Logger.getLogger(MirrorTarget.class.getName());
+
+    private final String url;
+
+    private final int capacity;
+
+    private final long initialRetryInMilli;
+
+    private final long maxRetryInMilli;
+
+    private final HttpClient httpclient;
+
+    // Runs the (blocking) sends
+    private final Executor executor;
+
+    // Delays the retries
+    private final ScheduledExecutorService scheduler;
+
+    // Called when the consumer asks for a snapshot
+    private final Runnable resync;
+
+    // Guarded by this
+    private final Deque<MirrorMessage> queue = new ArrayDeque<MirrorMessage>();
+    private boolean draining;
+    private long retryInMilli;
+
+    // Statistics, guarded by this
+    private long sent;
+    private long failures;
+    private long dropped;
+    private long resyncRequests;
+    private int consecutiveFailures;
+    private long totalLatencyInNanos;
+    private long maxLatencyInNanos;
+    private String lastError;
+
+    private final Runnable drainer = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    private final Runnable retry = new Runnable() {
+        @Override
+        public void run() {
+            executor.execute(drainer);
+        }
+    };
+
+    MirrorTarget(final String url,
+                 final int capacity,
+                 final long initialRetryInMilli,
+                 final long maxRetryInMilli,
+                 final HttpClient httpclient,
+                 final Executor executor,
+                 final ScheduledExecutorService scheduler,
+                 final Runnable resync) {
+        this.url = url;
+        this.capacity = capacity;
+        this.initialRetryInMilli = initialRetryInMilli;
+        this.maxRetryInMilli = maxRetryInMilli;
+        this.httpclient = httpclient;
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.resync = resync;
+        this.retryInMilli = initialRetryInMilli;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Queue a batch for this target, the oldest batch is dropped when the queue is full.
+     *
+     * @param message the batch
+     */
+    void offer(final MirrorMessage message) {
+        synchronized (this) {
+            if (queue.size() >= capacity) {
+                queue.pollFirst();
+                dropped++;
+            }
+            queue.addLast(message);
+
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+
+        executor.execute(drainer);
+    }
+
+    /**
+     * Send the queued batches in order, stops at the first failure and retries after the backoff delay.
+     */
+    private void drain() {
+        while (true) {
+            final MirrorMessage message;
+            synchronized (this) {
+                message = queue.peekFirst();
+                if (message == null) {
+                    draining = false;
+                    return;
+                }
+            }
+
+            final long delay = send(message);
+            if (delay > 0) {
+                scheduler.schedule(retry, delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            synchronized (this) {
+                // Unless it was dropped in the meantime
+                if (queue.peekFirst() == message) {
+                    queue.pollFirst();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param message the batch
+     * @return 0 when the batch is sent, otherwise the retry delay in milliseconds
+     */
+    private long send(final MirrorMessage message) {
+        final long start = System.nanoTime();
+
+        try {
+            final HttpPost httppost = new HttpPost(url + BATCH);
+            httppost.setEntity(new StringEntity(message.toString()));
+
+            final HttpResponse response = httpclient.execute(httppost);
+
+            // Reading the answer releases the connection to the pool
+            final String answer = response.getEntity() == null ? null : EntityUtils.toString(response.getEntity());
+
+            final int status = response.getStatusLine().getStatusCode();
+            if (status >= 300) {
+                throw new IOException("Mirror batch rejected with status " + status);
+            }
+
+            final boolean resyncRequested = answer != null && answer.contains(RESYNC);
+            sent(System.nanoTime() - start, resyncRequested);
+
+            if (resyncRequested) {
+                resync.run();
+            }
+            return 0;
+
+        } catch (IOException e) {
+            final long delay = failed(e.getMessage());
+            LOGGER.fine("Mirror batch " + message.getSequence() + " to " + url + " failed, retry in " + delay + "ms: " + e.getMessage());
+            return delay;
+        }
+    }
+
+    private synchronized void sent(final long latencyInNanos, final boolean resyncRequested) {
+        sent++;
+        totalLatencyInNanos += latencyInNanos;
+        maxLatencyInNanos = Math.max(maxLatencyInNanos, latencyInNanos);
+        if (resyncRequested) {
+            resyncRequests++;
+        }
+
+        if (consecutiveFailures > 0) {
+            LOGGER.info("Mirror " + url + " is back after " + consecutiveFailures + " failed batches");
+        }
+        consecutiveFailures = 0;
+        retryInMilli = initialRetryInMilli;
+    }
+
+    private synchronized long failed(final String error) {
+        failures++;
+        consecutiveFailures++;
+        lastError = error;
+
+        final long delay = retryInMilli;
+        retryInMilli = Math.min(retryInMilli * 2, maxRetryInMilli);
+        return delay;
+    }
+
+    /**
+     * @return true when the last batch was sent
+     */
+    public synchronized boolean isHealthy() {
+        return consecutiveFailures == 0;
+    }
+
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    public synchronized String getStatistics() {
+        return new StringBuilder(url)
+                .append(": healthy=").append(consecutiveFailures == 0)
+                .append(", queueDepth=").append(queue.size())
+                .append(", sent=").append(sent)
+                .append(", failures=").append(failures)
+                .append(", consecutiveFailures=").append(consecutiveFailures)
+                .append(", dropped=").append(dropped)
+                .append(", resyncRequests=").append(resyncRequests)
+                .append(", avgLatencyInMilli=").append(sent == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalLatencyInNanos / sent))
+                .append(", maxLatencyInMilli=").append(TimeUnit.NANOSECONDS.toMillis(maxLatencyInNanos))
+                .append(", lastError=").append(lastError).toString();
+    }
+}
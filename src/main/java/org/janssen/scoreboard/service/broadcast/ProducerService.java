@@ -1,33 +1,172 @@
 package org.janssen.scoreboard.service.broadcast;
 
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpConnectionParams;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import javax.ejb.Asynchronous;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
 import javax.ejb.Singleton;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static org.janssen.scoreboard.service.broadcast.MirrorMessage.NONE;
 
 /**
  * Produce a broadcast message for the mirrored scoreboard.
  *
+ * Every field has one pending slot (last write wins). The changed fields are collected
+ * into one sequenced {@link MirrorMessage} and queued for every mirrored scoreboard
+ * (a {@link MirrorTarget} per consumer, see mirror.properties), which sends it to the batch
+ * endpoint of its {@link ConsumerService} over a pooled keep-alive connection.
+ *
+ * Every 10 seconds (and whenever the consumer answers it missed a batch) the complete board state
+ * is sent as a snapshot, so a slave which missed an update recovers within that time.
+ * A (re)started slave can also pull the snapshot with GET /api/broadcast/producer/snapshot.
+ *
  * @author Stephan Janssen
  */
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 @Singleton
+@Path("/api/broadcast/producer")
 public class ProducerService extends AbstractBroadcaster {
 
-    private static final String BASE_URL = "http://192.168.1.100:8080/api/broadcast/consumer";
-//    private static final String BASE_URL = "http://10.0.1.82:8080/api/broadcast/consumer";
+    private static final Logger LOGGER = Logger.getLogger(ProducerService.class.getName());
+
+    private static final String MIRROR_PROPERTIES = "org/janssen/scoreboard/resources/mirror.properties";
+
+    static final String TARGETS_PROPERTY = "scoreboard.mirror.targets";
+
+    private static final String DEFAULT_TARGET = "http://192.168.1.100:8080/api/broadcast/consumer";
+
+    // All the changes within this window are sent in one batch
+    static final int BATCH_WINDOW_IN_MILLI = 50;
+
+    static final int SNAPSHOT_INTERVAL_IN_SECONDS = 10;
+
+    // The clock of a new mirrored game (see ConsumerService)
+    private static final int NEW_GAME_CLOCK = 600;
+
+    private static final MirrorField[] FIELDS = MirrorField.values();
+
+    private final AtomicIntegerArray pending = new AtomicIntegerArray(FIELDS.length);
+
+    // The last value of every state field, used for the snapshots
+    private final AtomicIntegerArray current = new AtomicIntegerArray(FIELDS.length);
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    private final AtomicBoolean snapshotRequested = new AtomicBoolean(false);
+
+    private final AtomicBoolean snapshotsStarted = new AtomicBoolean(false);
+
+    // Identifies this run of the master, so the slave accepts the sequence numbers after a restart
+    private final long epoch = System.currentTimeMillis();
+
+    // Only incremented by the sender
+    private volatile long sequence;
+
+    // Statistics
+    private final AtomicLong posted = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong snapshots = new AtomicLong();
+
+    private List<MirrorTarget> targets = Collections.emptyList();
+
+    private DefaultHttpClient httpclient;
 
-    // We can take scoreboard A as the FIXED mirrored target server.
-    HttpClient httpclient;
+    @Resource
+    private ManagedScheduledExecutorService ses;
+
+    // Runs the blocking sends of the targets, so the clocks on the scheduled executor never wait for a mirror
+    @Resource
+    private ManagedExecutorService mes;
+
+    private final Runnable resync = new Runnable() {
+        @Override
+        public void run() {
+            requestSnapshot();
+        }
+    };
+
+    private final Runnable sender = new Runnable() {
+        @Override
+        public void run() {
+            send();
+        }
+    };
+
+    public ProducerService() {
+        for (int i = 0; i < FIELDS.length; i++) {
+            pending.set(i, NONE);
+            current.set(i, NONE);
+        }
+    }
 
     @PostConstruct
     public void init() {
-        httpclient = new DefaultHttpClient();
+        final Properties config = loadConfig();
+
+        String urls = System.getProperty(TARGETS_PROPERTY);
+        if (urls == null || urls.trim().isEmpty()) {
+            urls = config.getProperty("targets", DEFAULT_TARGET);
+        }
+
+        final int capacity = Integer.parseInt(config.getProperty("queue.capacity", "32"));
+        final long initialRetry = Long.parseLong(config.getProperty("retry.initial", "250"));
+        final long maxRetry = Long.parseLong(config.getProperty("retry.max", "8000"));
+        final int timeout = Integer.parseInt(config.getProperty("timeout", "2000"));
+
+        final List<MirrorTarget> found = new ArrayList<MirrorTarget>();
+        final PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager();
+
+        httpclient = new DefaultHttpClient(connectionManager);
+        HttpConnectionParams.setConnectionTimeout(httpclient.getParams(), timeout);
+        HttpConnectionParams.setSoTimeout(httpclient.getParams(), timeout);
+
+        for (String url : urls.split(",")) {
+            if (!url.trim().isEmpty()) {
+                found.add(new MirrorTarget(url.trim(), capacity, initialRetry, maxRetry, httpclient, mes, ses, resync));
+            }
+        }
+
+        // One sender (and keep-alive connection) per target
+        connectionManager.setMaxTotal(Math.max(1, found.size()));
+        connectionManager.setDefaultMaxPerRoute(1);
+
+        targets = Collections.unmodifiableList(found);
+        LOGGER.info("Mirroring to " + targets.size() + " scoreboard(s): " + urls);
+    }
+
+    private Properties loadConfig() {
+        final Properties config = new Properties();
+
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(MIRROR_PROPERTIES)) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            LOGGER.warning("Unable to read " + MIRROR_PROPERTIES + ": " + e.getMessage());
+        }
+        return config;
     }
 
     @PreDestroy
@@ -35,63 +174,167 @@ public class ProducerService extends AbstractBroadcaster {
         httpclient.getConnectionManager().shutdown();
     }
 
-    @Asynchronous
     public void printFoulsA(final int foul) {
-        postData(FOULS_A, foul);
+        post(MirrorField.FOULS_A, foul);
     }
 
-    @Asynchronous
     public void printFoulsB(final int foul) {
-        postData(FOULS_B, foul);
+        post(MirrorField.FOULS_B, foul);
     }
 
-    @Asynchronous
     public void setPlayerFoul(final int totalPersonaFoul) {
-        postData(PERSONAL_FOUL, totalPersonaFoul);
+        post(MirrorField.PERSONAL_FOUL, totalPersonaFoul);
     }
 
-    @Asynchronous
     public void printQuarter(final int quarter) {
-        postData(QUARTER, quarter);
+        post(MirrorField.QUARTER, quarter);
     }
 
-    @Asynchronous
     public void printHomeScore(final int score) {
-        postData(HOME, score);
+        post(MirrorField.HOME, score);
     }
 
-    @Asynchronous
     public void printVisitorsScore(final int score) {
-        postData(VISITORS, score);
+        post(MirrorField.VISITORS, score);
     }
 
-    @Asynchronous
     public void printTimeInSeconds(final int seconds) {
-        postData(TIME, seconds);
+        post(MirrorField.TIME, seconds);
     }
 
-    @Asynchronous
     public void printHomeTimeout(final int timeout) {
-        postData(TIMEOUT_HOME, timeout);
+        post(MirrorField.TIMEOUT_HOME, timeout);
     }
 
-    @Asynchronous
     public void printVisitorsTimeout(final int timeout) {
-        postData(TIMEOUT_VISITORS, timeout);
+        post(MirrorField.TIMEOUT_VISITORS, timeout);
     }
 
-    @Asynchronous
+    /**
+     * The slave board is reset, so the pending fields of the previous game are dropped.
+     */
     public void newGame() {
-        postData(NEW_GAME, 0);
+        for (int i = 0; i < FIELDS.length; i++) {
+            pending.set(i, NONE);
+            current.set(i, FIELDS[i].isState() ? 0 : NONE);
+        }
+        current.set(MirrorField.TIME.ordinal(), NEW_GAME_CLOCK);
+
+        post(MirrorField.GAME, 0);
     }
 
-    private void postData(final String path, final int foul) {
-        try {
-            HttpPost httppost = new HttpPost(BASE_URL + path);
-            httppost.setEntity(new StringEntity("" + foul));
-            httpclient.execute(httppost);
-        } catch (IOException e) {
-            // Ignore because it's a fire and forget REST call
+    /**
+     * @return the complete board state, for a slave which (re)starts
+     */
+    @GET
+    @Path(SNAPSHOT)
+    @Produces({MediaType.TEXT_PLAIN})
+    public String getSnapshot() {
+        return new MirrorMessage(epoch, sequence, true, currentState()).toString();
+    }
+
+    /**
+     * @return the producer statistics, followed by one line per target
+     */
+    @GET
+    @Path(STATUS)
+    @Produces({MediaType.TEXT_PLAIN})
+    public String getStatistics() {
+        final StringBuilder statistics = new StringBuilder()
+                .append("epoch=").append(epoch)
+                .append(", sequence=").append(sequence)
+                .append(", posted=").append(posted.get())
+                .append(", batches=").append(batches.get())
+                .append(", snapshots=").append(snapshots.get());
+
+        for (MirrorTarget target : targets) {
+            statistics.append('\n').append(target.getStatistics());
+        }
+        return statistics.toString();
+    }
+
+    public List<MirrorTarget> getTargets() {
+        return targets;
+    }
+
+    private void post(final MirrorField field, final int value) {
+        posted.incrementAndGet();
+
+        if (field.isState()) {
+            current.set(field.ordinal(), value);
+        }
+        pending.set(field.ordinal(), value);
+
+        startSnapshots();
+        schedule(BATCH_WINDOW_IN_MILLI);
+    }
+
+    /**
+     * The periodic snapshots start with the first mirrored update.
+     */
+    private void startSnapshots() {
+        if (snapshotsStarted.compareAndSet(false, true)) {
+            ses.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    requestSnapshot();
+                }
+            }, SNAPSHOT_INTERVAL_IN_SECONDS, SNAPSHOT_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private void requestSnapshot() {
+        snapshotRequested.set(true);
+        schedule(BATCH_WINDOW_IN_MILLI);
+    }
+
+    private int[] currentState() {
+        final int[] values = new int[FIELDS.length];
+        for (int i = 0; i < FIELDS.length; i++) {
+            values[i] = current.get(i);
+        }
+        return values;
+    }
+
+    private void schedule(final long delayInMilli) {
+        if (flushScheduled.compareAndSet(false, true)) {
+            ses.schedule(sender, delayInMilli, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Collect the pending fields in one batch and queue it for every target.
+     */
+    private synchronized void send() {
+        flushScheduled.set(false);
+
+        final boolean snapshot = snapshotRequested.getAndSet(false);
+        final int[] values = new int[FIELDS.length];
+        boolean changed = false;
+
+        for (int i = 0; i < FIELDS.length; i++) {
+            values[i] = pending.getAndSet(i, NONE);
+
+            // The current value is at least as new as the pending one
+            if (snapshot && FIELDS[i].isState()) {
+                values[i] = current.get(i);
+            }
+            changed |= values[i] != NONE;
+        }
+
+        if (!changed || targets.isEmpty()) {
+            return;
+        }
+
+        final MirrorMessage message = new MirrorMessage(epoch, ++sequence, snapshot, values);
+
+        batches.incrementAndGet();
+        if (snapshot) {
+            snapshots.incrementAndGet();
+        }
+
+        for (MirrorTarget target : targets) {
+            target.offer(message);
         }
     }
 }
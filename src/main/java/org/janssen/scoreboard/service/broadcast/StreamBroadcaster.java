@@ -0,0 +1,402 @@
+package org.janssen.scoreboard.service.broadcast;
+
+import org.janssen.scoreboard.model.type.DisplaySegment;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.servlet.AsyncContext;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Pushes the live scoreboard state to the Server-Sent Events clients of /api/game/{id}/stream.
+ *
+ * The state is fed by the display pipeline, so a client never costs a database query.
+ * A new client gets the full state, after that only the changed segments are sent, for example
+ *
+ * id: 42
+ * data: {"game":3,"clock":512,"twentyFour":17}
+ *
+ * The quarter comes from the game state (the quarter digit of the board also flashes the player fouls),
+ * the player fouls are only sent when they're flashed: {"game":3,"playerFouls":4}
+ *
+ * Every client has its own small queue of events and its own drainer, which writes them in order. The writes can
+ * block on a slow phone, so the drainers don't run on the executor of the clocks and a stalled client only holds up
+ * its own drainer. A client which can't be written to, or which has more than {@link #MAX_PENDING} events waiting
+ * (the heartbeat makes sure a stalled client gets there), is dropped.
+ *
+ * @author Stephan Janssen
+ */
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@Singleton
+public class StreamBroadcaster {
+
+    private static final Logger LOGGER = Logger.getLogger(StreamBroadcaster.class.getName());
+
+    // Keep the connection (and proxies) alive when nothing happens on the board
+    static final int HEARTBEAT_IN_SECONDS = 15;
+
+    // The browser reconnects after this delay when the stream breaks
+    static final int RETRY_IN_MILLI = 3000;
+
+    static final int MAX_SUBSCRIBERS = 500;
+
+    // The events waiting for one client, a client which falls further behind is dropped
+    static final int MAX_PENDING = 32;
+
+    private static final String HEARTBEAT = ": ping\n\n";
+
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private static final DisplaySegment[] SEGMENTS = DisplaySegment.values();
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+
+    // The last value per segment, guarded by this
+    private final int[] values = new int[SEGMENTS.length];
+
+    private long liveGameId;
+
+    // The quarter of the live game, guarded by this
+    private int quarter = NONE;
+
+    private long sequence;
+
+    private ScheduledFuture<?> heartbeat;
+
+    // Statistics
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong tooSlow = new AtomicLong();
+
+    @Resource
+    private ManagedScheduledExecutorService ses;
+
+    // Runs the drainers, the writes to the clients block
+    @Resource
+    private ManagedExecutorService mes;
+
+    public StreamBroadcaster() {
+        for (int i = 0; i < SEGMENTS.length; i++) {
+            values[i] = NONE;
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        for (Subscriber subscriber : subscribers) {
+            remove(subscriber);
+        }
+    }
+
+    /**
+     * The game shown on the board, only the clients of this game receive the updates.
+     *
+     * @param gameId the game id
+     */
+    public synchronized void setLiveGame(final long gameId) {
+        if (gameId != liveGameId) {
+            liveGameId = gameId;
+            quarter = NONE;
+
+            for (int i = 0; i < SEGMENTS.length; i++) {
+                values[i] = NONE;
+            }
+        }
+    }
+
+    /**
+     * Publish the segments which changed on the board.
+     *
+     * @param shown   the values shown on the board, indexed by the segment ordinal
+     * @param changed true for the segments which changed
+     */
+    public synchronized void publish(final int[] shown, final boolean[] changed) {
+        final StringBuilder data = new StringBuilder(64);
+
+        for (int i = 0; i < SEGMENTS.length; i++) {
+            if (changed[i] && shown[i] != NONE) {
+                values[i] = shown[i];
+                append(data, SEGMENTS[i], shown[i]);
+
+                final DisplaySegment sibling = SEGMENTS[i].getSibling();
+                if (sibling != null) {
+                    values[sibling.ordinal()] = NONE;
+                }
+            }
+        }
+
+        if (data.length() == 0 || subscribers.isEmpty()) {
+            return;
+        }
+
+        deliver(event(liveGameId, data), liveGameId);
+    }
+
+    /**
+     * @param gameId  the game
+     * @param quarter the quarter of the game, only published for the live game
+     */
+    public synchronized void publishQuarter(final long gameId, final int quarter) {
+        if (gameId != liveGameId || quarter == this.quarter) {
+            return;
+        }
+        this.quarter = quarter;
+
+        if (!subscribers.isEmpty()) {
+            deliver(event(liveGameId, field(new StringBuilder(16), "quarter", quarter)), liveGameId);
+        }
+    }
+
+    /**
+     * The player fouls flashed on the board, not part of the state of a new client.
+     *
+     * @param playerFouls the player fouls
+     */
+    public synchronized void publishPlayerFouls(final int playerFouls) {
+        if (!subscribers.isEmpty()) {
+            deliver(event(liveGameId, field(new StringBuilder(16), "playerFouls", playerFouls)), liveGameId);
+        }
+    }
+
+    /**
+     * A new client, it first receives the full state of the live game.
+     *
+     * @param asyncContext the async servlet context of the stream request
+     * @param gameId       the game the client is interested in
+     * @return false when there are too many clients already
+     */
+    public boolean subscribe(final AsyncContext asyncContext, final long gameId) {
+        if (isFull()) {
+            return false;
+        }
+
+        final Subscriber subscriber = new Subscriber(asyncContext, gameId);
+
+        synchronized (this) {
+            subscribers.add(subscriber);
+
+            final StringBuilder data = new StringBuilder(128);
+            if (gameId == liveGameId) {
+                for (int i = 0; i < SEGMENTS.length; i++) {
+                    if (values[i] != NONE) {
+                        append(data, SEGMENTS[i], values[i]);
+                    }
+                }
+                if (quarter != NONE) {
+                    field(data, "quarter", quarter);
+                }
+            }
+
+            deliver(subscriber, "retry: " + RETRY_IN_MILLI + "\n" + event(gameId, data));
+
+            if (heartbeat == null) {
+                heartbeat = ses.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (Subscriber subscriber : subscribers) {
+                            deliver(subscriber, HEARTBEAT);
+                        }
+                    }
+                }, HEARTBEAT_IN_SECONDS, HEARTBEAT_IN_SECONDS, TimeUnit.SECONDS);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param asyncContext the async servlet context of a client which went away
+     */
+    public void unsubscribe(final AsyncContext asyncContext) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.asyncContext == asyncContext) {
+                remove(subscriber);
+            }
+        }
+    }
+
+    public synchronized long getLiveGame() {
+        return liveGameId;
+    }
+
+    public boolean isFull() {
+        return subscribers.size() >= MAX_SUBSCRIBERS;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public String getStatistics() {
+        int pending = 0;
+        for (Subscriber subscriber : subscribers) {
+            pending += subscriber.size.get();
+        }
+
+        return new StringBuilder()
+                .append("subscribers=").append(subscribers.size())
+                .append(", events=").append(events.get())
+                .append(", writes=").append(writes.get())
+                .append(", dropped=").append(dropped.get())
+                .append(", tooSlow=").append(tooSlow.get())
+                .append(", pending=").append(pending).toString();
+    }
+
+    private void append(final StringBuilder data, final DisplaySegment segment, final int value) {
+        if (segment.getKey() != null) {
+            field(data, segment.getKey(), value);
+        }
+    }
+
+    private StringBuilder field(final StringBuilder data, final String key, final int value) {
+        return data.append(',').append('"').append(key).append("\":").append(value);
+    }
+
+    private String event(final long gameId, final StringBuilder data) {
+        events.incrementAndGet();
+
+        return new StringBuilder(data.length() + 32)
+                .append("id: ").append(++sequence).append('\n')
+                .append("data: {\"game\":").append(gameId).append(data).append("}\n\n").toString();
+    }
+
+    /**
+     * Queue the event for the clients of the game.
+     */
+    private void deliver(final String event, final long gameId) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.gameId == gameId) {
+                deliver(subscriber, event);
+            }
+        }
+    }
+
+    /**
+     * Queue the event for the client, never blocks. A client which is too far behind is dropped.
+     */
+    private void deliver(final Subscriber subscriber, final String event) {
+        if (subscriber.removed) {
+            return;
+        }
+
+        if (subscriber.size.incrementAndGet() > MAX_PENDING) {
+            tooSlow.incrementAndGet();
+            LOGGER.info("Stream client dropped, more than " + MAX_PENDING + " events waiting");
+            remove(subscriber);
+            return;
+        }
+        subscriber.pending.add(event);
+
+        if (subscriber.drainScheduled.compareAndSet(false, true)) {
+            mes.execute(subscriber);
+        }
+    }
+
+    private void drain(final Subscriber subscriber) {
+        do {
+            drainQueue(subscriber);
+            subscriber.drainScheduled.set(false);
+
+            // An event added after the queue was empty but before the flag was cleared didn't start a drainer
+        } while (!subscriber.pending.isEmpty() && subscriber.drainScheduled.compareAndSet(false, true));
+    }
+
+    private void drainQueue(final Subscriber subscriber) {
+        String event;
+        while ((event = subscriber.pending.poll()) != null) {
+            subscriber.size.decrementAndGet();
+
+            if (subscriber.removed || !write(subscriber, event)) {
+                subscriber.pending.clear();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return false when the client is dropped
+     */
+    private boolean write(final Subscriber subscriber, final String event) {
+        try {
+            final PrintWriter writer = subscriber.asyncContext.getResponse().getWriter();
+            writer.write(event);
+            writer.flush();
+
+            if (writer.checkError()) {
+                throw new IOException("Stream closed");
+            }
+            writes.incrementAndGet();
+            return true;
+
+        } catch (IOException | IllegalStateException e) {
+            remove(subscriber);
+            return false;
+        }
+    }
+
+    private void remove(final Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            subscriber.removed = true;
+            dropped.incrementAndGet();
+
+            try {
+                subscriber.asyncContext.complete();
+            } catch (IllegalStateException e) {
+                // Already completed by the container
+            }
+        }
+
+        synchronized (this) {
+            if (subscribers.isEmpty() && heartbeat != null) {
+                heartbeat.cancel(false);
+                heartbeat = null;
+            }
+        }
+
+        LOGGER.fine("Stream client removed, " + subscribers.size() + " left");
+    }
+
+    // Drains its own queue
+    private class Subscriber implements Runnable {
+
+        private final AsyncContext asyncContext;
+
+        private final long gameId;
+
+        // The events waiting to be written, the queue of a stalled client stops growing when the client is dropped
+        private final Queue<String> pending = new ConcurrentLinkedQueue<String>();
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+        private volatile boolean removed;
+
+        Subscriber(final AsyncContext asyncContext, final long gameId) {
+            this.asyncContext = asyncContext;
+            this.gameId = gameId;
+        }
+
+        @Override
+        public void run() {
+            drain(this);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.janssen.scoreboard.service.command;
+
+import java.util.Arrays;
+
+/**
+ * One scorer action (like score.inc or quarter.inc), recorded as the values it changed.
+ * Undo puts back the old values, redo the new ones, so a command never depends on the commands around it.
+ * The clock also changes by running, so a clock command can only be undone (redone) while the clock still shows
+ * its new (old) value. A stop of the clock is recorded as a played command, it's replayed but never undone.
+ *
+ * @author Stephan Janssen
+ */
+public final class GameCommand {
+
+    /**
+     * The game values a command can change.
+     */
+    public enum Field {
+        HOME_SCORE("homeScore"),
+        HOME_FOULS("homeFouls"),
+        HOME_TIMEOUTS("homeTimeouts"),
+        VISITORS_SCORE("visitorsScore"),
+        VISITORS_FOULS("visitorsFouls"),
+        VISITORS_TIMEOUTS("visitorsTimeouts"),
+        QUARTER("quarter"),
+        CLOCK("clock");
+
+        private final String key;
+
+        Field(final String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private final String name;
+
+    private final long timestamp;
+
+    private final Field[] fields;
+
+    private final int[] before;
+
+    private final int[] after;
+
+    private final boolean played;
+
+    private GameCommand(final String name, final long timestamp, final Field[] fields,
+                        final int[] before, final int[] after, final boolean played) {
+        this.name = name;
+        this.timestamp = timestamp;
+        this.fields = fields;
+        this.before = before;
+        this.after = after;
+        this.played = played;
+    }
+
+    /**
+     * @param name   the action, for example score.inc
+     * @param before the game before the action
+     * @param after  the game after the action
+     * @return the command, or null when the action didn't change anything
+     */
+    public static GameCommand between(final String name, final GameState before, final GameState after) {
+        return between(name, before, after, false);
+    }
+
+    /**
+     * @param name   the event, for example clock.stop
+     * @param before the game before the event
+     * @param after  the game after the event
+     * @return the command of what the game play changed, or null when nothing changed
+     */
+    public static GameCommand played(final String name, final GameState before, final GameState after) {
+        return between(name, before, after, true);
+    }
+
+    private static GameCommand between(final String name, final GameState before, final GameState after, final boolean played) {
+        final Field[] all = Field.values();
+        final Field[] fields = new Field[all.length];
+        final int[] oldValues = new int[all.length];
+        final int[] newValues = new int[all.length];
+        int changes = 0;
+
+        for (Field field : all) {
+            if (before.get(field) != after.get(field)) {
+                fields[changes] = field;
+                oldValues[changes] = before.get(field);
+                newValues[changes] = after.get(field);
+                changes++;
+            }
+        }
+
+        if (changes == 0) {
+            return null;
+        }
+
+        return new GameCommand(name, System.currentTimeMillis(),
+                Arrays.copyOf(fields, changes), Arrays.copyOf(oldValues, changes), Arrays.copyOf(newValues, changes), played);
+    }
+
+    /**
+     * @param state the game state, the old values are put back
+     */
+    public void undo(final GameState state) {
+        for (int i = 0; i < fields.length; i++) {
+            state.set(fields[i], before[i]);
+        }
+    }
+
+    /**
+     * @param state the game state, the new values are put back
+     */
+    public void redo(final GameState state) {
+        for (int i = 0; i < fields.length; i++) {
+            state.set(fields[i], after[i]);
+        }
+    }
+
+    public boolean changes(final Field field) {
+        return indexOf(field) >= 0;
+    }
+
+    /**
+     * @return the old value of a changed field
+     */
+    public int getBefore(final Field field) {
+        return before[indexOf(field)];
+    }
+
+    /**
+     * @return the new value of a changed field
+     */
+    public int getAfter(final Field field) {
+        return after[indexOf(field)];
+    }
+
+    /**
+     * @return true when the game play (not a scorer) made the change
+     */
+    public boolean isPlayed() {
+        return played;
+    }
+
+    private int indexOf(final Field field) {
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] == field) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder(name).append('@').append(timestamp);
+        for (int i = 0; i < fields.length; i++) {
+            builder.append(' ').append(fields[i].getKey()).append('=').append(before[i]).append("->").append(after[i]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,301 @@
+package org.janssen.scoreboard.service.command;
+
+import org.janssen.scoreboard.model.Game;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The scorer commands per game, in a ring buffer which keeps the last {@link #CAPACITY} commands.
+ *
+ * Undo moves a cursor back, redo moves it forward (both O(1)), a new command drops the undone ones.
+ * The services of the scorers record at the same time, so checking and moving the cursor is one step.
+ * The state of a game at an earlier moment is folded from the current (in memory) state
+ * by undoing the newer commands, without a database query. The clock stops are kept in a second ring,
+ * they're folded with the commands but never undone, the time played doesn't come back with an undo.
+ * While the clock runs a replay shows the clock of the last stop or correction.
+ *
+ * @author Stephan Janssen
+ */
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@Singleton
+public class GameCommandLog {
+
+    static final int CAPACITY = 256;
+
+    // The logs of the older games are dropped
+    static final int MAX_GAMES = 32;
+
+    private final ConcurrentMap<Long, CommandRing> rings = new ConcurrentHashMap<Long, CommandRing>();
+
+    /**
+     * Record what a scorer action changed.
+     *
+     * @param name   the action, for example score.inc
+     * @param before the game state before the action (or null when the game is unknown)
+     * @param game   the game after the action
+     */
+    public void record(final String name, final GameState before, final Game game) {
+        if (before != null && game != null) {
+            record(game.getId(), GameCommand.between(name, before, GameState.of(game)));
+        }
+    }
+
+    public void record(final long gameId, final GameCommand command) {
+        if (command != null) {
+            if (command.isPlayed()) {
+                ring(gameId).recordPlayed(command);
+            } else {
+                ring(gameId).record(command);
+            }
+        }
+    }
+
+    /**
+     * Record what the game play changed, for example the clock of a stop. It's replayed, never undone.
+     *
+     * @param name   the event, for example clock.stop
+     * @param before the game state before the event (or null when the game is unknown)
+     * @param game   the game after the event
+     */
+    public void recordPlayed(final String name, final GameState before, final Game game) {
+        if (before != null && game != null) {
+            record(game.getId(), GameCommand.played(name, before, GameState.of(game)));
+        }
+    }
+
+    /**
+     * @param gameId       the game id
+     * @param clockRunning true when the game clock runs, a clock change can't be undone then
+     * @param clock        the seconds on the game clock now
+     * @return the command to undo (the cursor moves back), or null when there is nothing to undo
+     * @throws IllegalStateException when the command changes the clock while it runs or after it ran
+     *                               (the cursor doesn't move)
+     */
+    public GameCommand undo(final long gameId, final boolean clockRunning, final int clock) {
+        final CommandRing ring = rings.get(gameId);
+        return ring == null ? null : ring.undo(clockRunning, clock);
+    }
+
+    /**
+     * @param gameId       the game id
+     * @param clockRunning true when the game clock runs, a clock change can't be redone then
+     * @param clock        the seconds on the game clock now
+     * @return the command to redo (the cursor moves forward), or null when there is nothing to redo
+     * @throws IllegalStateException when the command changes the clock while it runs or after it ran
+     *                               (the cursor doesn't move)
+     */
+    public GameCommand redo(final long gameId, final boolean clockRunning, final int clock) {
+        final CommandRing ring = rings.get(gameId);
+        return ring == null ? null : ring.redo(clockRunning, clock);
+    }
+
+    /**
+     * @param current   the current state of the game
+     * @param timestamp the moment (in epoch millis)
+     * @return the state of the game at that moment, or null when older commands than the kept ones would be needed
+     */
+    public GameState replay(final GameState current, final long timestamp) {
+        final CommandRing ring = rings.get(current.getGameId());
+        if (ring != null && !ring.fold(current, timestamp)) {
+            return null;
+        }
+        return current;
+    }
+
+    /**
+     * @param gameId the game id
+     * @return the oldest moment which can be replayed (in epoch millis), or -1 when there are no commands
+     */
+    public long getOldestTimestamp(final long gameId) {
+        final CommandRing ring = rings.get(gameId);
+        return ring == null ? -1 : ring.getOldestTimestamp();
+    }
+
+    /**
+     * @param gameId the game id
+     * @return the applied commands, oldest first
+     */
+    public List<GameCommand> list(final long gameId) {
+        final CommandRing ring = rings.get(gameId);
+        return ring == null ? new ArrayList<GameCommand>() : ring.list();
+    }
+
+    public void remove(final long gameId) {
+        rings.remove(gameId);
+    }
+
+    private CommandRing ring(final long gameId) {
+        CommandRing ring = rings.get(gameId);
+        if (ring == null) {
+            if (rings.size() >= MAX_GAMES) {
+                dropOldestGame();
+            }
+
+            final CommandRing created = new CommandRing();
+            ring = rings.putIfAbsent(gameId, created);
+            if (ring == null) {
+                ring = created;
+            }
+        }
+        return ring;
+    }
+
+    private void dropOldestGame() {
+        long oldest = Long.MAX_VALUE;
+        for (Long gameId : rings.keySet()) {
+            oldest = Math.min(oldest, gameId);
+        }
+        rings.remove(oldest);
+    }
+
+    /**
+     * The commands of one game. Positions are sequence numbers, the slot is the position modulo the capacity.
+     */
+    private static class CommandRing {
+
+        private final GameCommand[] commands = new GameCommand[CAPACITY];
+
+        // The oldest kept position
+        private long first;
+
+        // The position after the last applied command
+        private long cursor;
+
+        // The position after the last (possibly undone) command
+        private long end;
+
+        // The played commands (clock stops), never undone
+        private final GameCommand[] played = new GameCommand[CAPACITY];
+        private long playedFirst;
+        private long playedEnd;
+
+        synchronized void record(final GameCommand command) {
+            commands[(int) (cursor % CAPACITY)] = command;
+            cursor++;
+            end = cursor;
+
+            if (end - first > CAPACITY) {
+                first = end - CAPACITY;
+            }
+        }
+
+        synchronized void recordPlayed(final GameCommand command) {
+            played[(int) (playedEnd % CAPACITY)] = command;
+            playedEnd++;
+
+            if (playedEnd - playedFirst > CAPACITY) {
+                playedFirst = playedEnd - CAPACITY;
+            }
+        }
+
+        synchronized GameCommand undo(final boolean clockRunning, final int clock) {
+            if (cursor == first) {
+                return null;
+            }
+            final GameCommand command = commands[(int) ((cursor - 1) % CAPACITY)];
+            if (command.changes(GameCommand.Field.CLOCK)) {
+                checkClock(command, clockRunning, clock, command.getAfter(GameCommand.Field.CLOCK));
+            }
+
+            cursor--;
+            return command;
+        }
+
+        synchronized GameCommand redo(final boolean clockRunning, final int clock) {
+            if (cursor == end) {
+                return null;
+            }
+            final GameCommand command = commands[(int) (cursor % CAPACITY)];
+            if (command.changes(GameCommand.Field.CLOCK)) {
+                checkClock(command, clockRunning, clock, command.getBefore(GameCommand.Field.CLOCK));
+            }
+
+            cursor++;
+            return command;
+        }
+
+        /**
+         * @param expected the clock the command left (undo) or found (redo)
+         */
+        private void checkClock(final GameCommand command, final boolean clockRunning, final int clock, final int expected) {
+            if (clockRunning) {
+                throw new IllegalStateException("Not allowed, clock is still running");
+            }
+
+            // Putting back the value would give back (or take) the time played since
+            if (clock != expected) {
+                throw new IllegalStateException("Not allowed, the clock ran since " + command.getName());
+            }
+        }
+
+        /**
+         * Undo the commands and the played commands after the moment, newest first.
+         *
+         * @return false when older commands than the kept ones may have changed the state after the moment
+         */
+        synchronized boolean fold(final GameState state, final long timestamp) {
+            long position = cursor - 1;
+            long playedPosition = playedEnd - 1;
+
+            while (true) {
+                final GameCommand command = position >= first ? commands[(int) (position % CAPACITY)] : null;
+                final GameCommand ran = playedPosition >= playedFirst ? played[(int) (playedPosition % CAPACITY)] : null;
+
+                final GameCommand newest;
+                if (ran == null || (command != null && command.getTimestamp() >= ran.getTimestamp())) {
+                    newest = command;
+                    position--;
+                } else {
+                    newest = ran;
+                    playedPosition--;
+                }
+
+                if (newest == null || newest.getTimestamp() <= timestamp) {
+                    break;
+                }
+                newest.undo(state);
+            }
+
+            return (first == 0 || commands[(int) (first % CAPACITY)].getTimestamp() <= timestamp) &&
+                   (playedFirst == 0 || played[(int) (playedFirst % CAPACITY)].getTimestamp() <= timestamp);
+        }
+
+        synchronized long getOldestTimestamp() {
+            long oldest = -1;
+
+            // A ring which dropped commands can't go back further than its oldest one
+            if (first > 0) {
+                oldest = commands[(int) (first % CAPACITY)].getTimestamp();
+            }
+            if (playedFirst > 0) {
+                oldest = Math.max(oldest, played[(int) (playedFirst % CAPACITY)].getTimestamp());
+            }
+            if (oldest >= 0) {
+                return oldest;
+            }
+
+            if (end > first) {
+                oldest = commands[(int) (first % CAPACITY)].getTimestamp();
+            }
+            if (playedEnd > playedFirst) {
+                final long oldestPlayed = played[(int) (playedFirst % CAPACITY)].getTimestamp();
+                oldest = oldest < 0 ? oldestPlayed : Math.min(oldest, oldestPlayed);
+            }
+            return oldest;
+        }
+
+        synchronized List<GameCommand> list() {
+            final List<GameCommand> list = new ArrayList<GameCommand>((int) (cursor - first));
+            for (long position = first; position < cursor; position++) {
+                list.add(commands[(int) (position % CAPACITY)]);
+            }
+            return list;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.janssen.scoreboard.service.command;
+
+import org.janssen.scoreboard.model.Game;
+import org.janssen.scoreboard.model.Team;
+
+import static org.janssen.scoreboard.service.command.GameCommand.Field;
+
+/**
+ * A snapshot of the values of a game which the scorer can change, detached from the JPA entities.
+ *
+ * @author Stephan Janssen
+ */
+public final class GameState {
+
+    private final long gameId;
+
+    // Indexed by the field ordinal
+    private final int[] values = new int[Field.values().length];
+
+    private GameState(final long gameId) {
+        this.gameId = gameId;
+    }
+
+    /**
+     * @param game the game (or null)
+     * @return the current values of the game and its teams, or null
+     */
+    public static GameState of(final Game game) {
+        if (game == null) {
+            return null;
+        }
+
+        final GameState state = new GameState(game.getId());
+        state.set(Field.QUARTER, game.getQuarter());
+        state.set(Field.CLOCK, game.getClock());
+
+        final Team home = game.getTeamA();
+        state.set(Field.HOME_SCORE, home.getScore());
+        state.set(Field.HOME_FOULS, home.getFouls());
+        state.set(Field.HOME_TIMEOUTS, home.getTimeOut());
+
+        final Team visitors = game.getTeamB();
+        state.set(Field.VISITORS_SCORE, visitors.getScore());
+        state.set(Field.VISITORS_FOULS, visitors.getFouls());
+        state.set(Field.VISITORS_TIMEOUTS, visitors.getTimeOut());
+        return state;
+    }
+
+    /**
+     * Copy the values into the game and its teams.
+     *
+     * @param game the game
+     */
+    public void applyTo(final Game game) {
+        game.setQuarter(get(Field.QUARTER));
+        game.setClock(get(Field.CLOCK));
+
+        final Team home = game.getTeamA();
+        home.setScore(get(Field.HOME_SCORE));
+        home.setFouls(get(Field.HOME_FOULS));
+        home.setTimeOut(get(Field.HOME_TIMEOUTS));
+
+        final Team visitors = game.getTeamB();
+        visitors.setScore(get(Field.VISITORS_SCORE));
+        visitors.setFouls(get(Field.VISITORS_FOULS));
+        visitors.setTimeOut(get(Field.VISITORS_TIMEOUTS));
+    }
+
+    public long getGameId() {
+        return gameId;
+    }
+
+    public int get(final Field field) {
+        return values[field.ordinal()];
+    }
+
+    void set(final Field field, final int value) {
+        values[field.ordinal()] = value;
+    }
+
+    /**
+     * @return the state as JSON, for example {"game":3,"quarter":2,"clock":431,"homeScore":42,...}
+     */
+    public String toJson() {
+        final StringBuilder json = new StringBuilder(192).append("{\"game\":").append(gameId);
+        for (Field field : Field.values()) {
+            json.append(",\"").append(field.getKey()).append("\":").append(get(field));
+        }
+        return json.append('}').toString();
+    }
+}
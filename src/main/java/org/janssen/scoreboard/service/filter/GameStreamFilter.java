@@ -0,0 +1,109 @@
+package org.janssen.scoreboard.service.filter;
+
+import org.janssen.scoreboard.service.broadcast.StreamBroadcaster;
+
+import javax.ejb.EJB;
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Serves the Server-Sent Events stream GET /api/game/{id}/stream, all the other game requests go to the REST service.
+ * JAX-RS 1.1 has no SSE support, so the stream is an async servlet request handed to the {@link StreamBroadcaster}.
+ *
+ * @author Stephan Janssen
+ */
+public class GameStreamFilter implements javax.servlet.Filter {
+
+    private static final String GAME_PATH = "/api/game/";
+
+    private static final String STREAM = "/stream";
+
+    @EJB
+    private StreamBroadcaster streamBroadcaster;
+
+    @Override
+    public void init(final FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(final ServletRequest request,
+                         final ServletResponse response,
+                         final FilterChain chain) throws IOException, ServletException {
+
+        final HttpServletRequest req = (HttpServletRequest) request;
+        final Long gameId = getStreamGameId(req);
+
+        if (gameId == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        final HttpServletResponse res = (HttpServletResponse) response;
+
+        if (!req.isAsyncSupported() || streamBroadcaster.isFull()) {
+            res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        res.setContentType("text/event-stream");
+        res.setCharacterEncoding("UTF-8");
+        res.setHeader("Cache-Control", "no-cache");
+        res.setHeader("Connection", "keep-alive");
+        res.flushBuffer();
+
+        final AsyncContext asyncContext = req.startAsync();
+        asyncContext.setTimeout(0);
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(final AsyncEvent event) throws IOException {
+                streamBroadcaster.unsubscribe(asyncContext);
+            }
+
+            @Override
+            public void onTimeout(final AsyncEvent event) throws IOException {
+                streamBroadcaster.unsubscribe(asyncContext);
+            }
+
+            @Override
+            public void onError(final AsyncEvent event) throws IOException {
+                streamBroadcaster.unsubscribe(asyncContext);
+            }
+
+            @Override
+            public void onStartAsync(final AsyncEvent event) throws IOException {
+            }
+        });
+
+        if (!streamBroadcaster.subscribe(asyncContext, gameId)) {
+            // Lost the race for the last place
+            asyncContext.complete();
+        }
+    }
+
+    /**
+     * @return the game id of a stream request or null for any other request
+     */
+    private Long getStreamGameId(final HttpServletRequest req) {
+        if (!"GET".equals(req.getMethod())) {
+            return null;
+        }
+
+        final String path = req.getRequestURI().substring(req.getContextPath().length());
+
+        if (!path.startsWith(GAME_PATH) || !path.endsWith(STREAM)) {
+            return null;
+        }
+
+        try {
+            return Long.parseLong(path.substring(GAME_PATH.length(), path.length() - STREAM.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
@@ -19,7 +19,8 @@ public class PasswordHash {
     // The following constants may be changed without breaking existing hashes.
     public static final int SALT_BYTE_SIZE = 24;
     public static final int HASH_BYTE_SIZE = 24;
-    public static final int PBKDF2_ITERATIONS = 1000;
+    // A hash keeps its own iterations, -Dscoreboard.pbkdf2.iterations only applies to new hashes
+    public static final int PBKDF2_ITERATIONS = Integer.getInteger("scoreboard.pbkdf2.iterations", 1000);
 
     public static final int ITERATION_INDEX = 0;
     public static final int SALT_INDEX = 1;
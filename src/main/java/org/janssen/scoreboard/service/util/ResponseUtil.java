@@ -39,6 +39,10 @@ public class ResponseUtil {
         return Response.status(Response.Status.GONE).build();
     }
 
+    public static Response gone(final String msg) {
+        return Response.status(Response.Status.GONE).entity(msg).build();
+    }
+
     public static Response created(final Object entity) {
         return Response.status(Response.Status.CREATED).entity(entity).build();
     }
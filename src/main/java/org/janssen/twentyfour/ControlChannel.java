@@ -0,0 +1,164 @@
+package org.janssen.twentyfour;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The persistent TCP connection to the 24s channel of the scoreboard (see TwentyFourChannel).
+ *
+ * A command is sent as "sequence command [argument]" and the reply "sequence status" is its ack.
+ * The connection is (re)opened by the next command, but not sooner than 10 seconds after a failed connect
+ * so the buttons don't wait for a scoreboard without the channel.
+ *
+ * A command which was written but not acknowledged may have been executed by the server,
+ * it fails with an {@link UnacknowledgedException} and must not be sent again (over HTTP).
+ *
+ * @author Stephan Janssen
+ */
+class ControlChannel {
+
+    private final int FIVE_HUNDRED_MILLIS = 500;
+
+    private final long RECONNECT_DELAY_IN_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final String host;
+    private final int port;
+    private final String token;
+
+    private Socket socket;
+    private BufferedReader reader;
+    private Writer writer;
+
+    private long sequence;
+    private long lastFailure;
+    private boolean failed;
+
+    // The round trip of the last command in ms
+    private volatile long lastRoundTrip = -1;
+
+    ControlChannel(final String host, final int port, final String token) {
+        this.host = host;
+        this.port = port;
+        this.token = token;
+    }
+
+    /**
+     * @param command the command, for example "INC 3"
+     * @return the (HTTP) status of the command
+     * @throws UnacknowledgedException when the command was sent but not acknowledged, the connection is closed
+     * @throws IOException when the command couldn't be sent, the connection is closed
+     */
+    synchronized int send(final String command) throws IOException {
+        if (socket == null) {
+            connect();
+        }
+
+        final long seq = ++sequence;
+        try {
+            writer.write(seq + " " + command + "\n");
+            writer.flush();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+
+        try {
+            return awaitAck(seq);
+        } catch (IOException e) {
+            close();
+            throw new UnacknowledgedException(command, e);
+        }
+    }
+
+    /**
+     * Keep the connection open, the round trip of the previous command is reported to the server.
+     */
+    synchronized int ping() throws IOException {
+        return send("PING " + lastRoundTrip);
+    }
+
+    long getLastRoundTrip() {
+        return lastRoundTrip;
+    }
+
+    synchronized void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignore) {
+            }
+        }
+        socket = null;
+        reader = null;
+        writer = null;
+    }
+
+    private void connect() throws IOException {
+        if (failed && System.nanoTime() - lastFailure < RECONNECT_DELAY_IN_NANOS) {
+            throw new IOException("Channel not available");
+        }
+
+        final Socket connecting = new Socket();
+        try {
+            connecting.setTcpNoDelay(true);
+            connecting.setSoTimeout(FIVE_HUNDRED_MILLIS);
+            connecting.connect(new InetSocketAddress(host, port), FIVE_HUNDRED_MILLIS);
+
+            socket = connecting;
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+
+            final long seq = ++sequence;
+            writer.write(seq + " HELLO " + token + "\n");
+            writer.flush();
+
+            if (awaitAck(seq) != 200) {
+                throw new IOException("Channel refused the token");
+            }
+            failed = false;
+
+        } catch (IOException e) {
+            close();
+            connecting.close();
+            failed = true;
+            lastFailure = System.nanoTime();
+            throw e;
+        }
+    }
+
+    private int awaitAck(final long seq) throws IOException {
+        final long start = System.nanoTime();
+
+        // Skip the replies which aren't the ack of this command
+        String line;
+        while ((line = reader.readLine()) != null) {
+            final String[] parts = line.split(" ");
+            try {
+                if (parts.length >= 2 && Long.parseLong(parts[0]) == seq) {
+                    lastRoundTrip = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    return Integer.parseInt(parts[1]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid reply " + line);
+            }
+        }
+        throw new IOException("Channel closed");
+    }
+
+    /**
+     * The command was written, the server may have executed it.
+     */
+    static class UnacknowledgedException extends IOException {
+
+        UnacknowledgedException(final String command, final IOException cause) {
+            super(command + " not acknowledged: " + cause.getMessage(), cause);
+        }
+    }
+}
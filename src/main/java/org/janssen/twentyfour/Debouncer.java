@@ -0,0 +1,82 @@
+package org.janssen.twentyfour;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The debounce and edge detection of one button, called on the pi4j event thread for every edge of its pin.
+ *
+ * A momentary button is pressed on the rising edge (the pins have a pull down resistor), a rising edge within the
+ * window after the previous accepted press is a bounce. The release doesn't start a window, so a quick second press
+ * isn't lost because the release of the first one came late.
+ * A switch reports every change of its level, an edge within the window after its previous accepted edge is a bounce.
+ * Nothing is allocated or logged per edge.
+ *
+ * @author Stephan Janssen
+ */
+class Debouncer {
+
+    private final String name;
+    private final long windowInNanos;
+    private final boolean momentary;
+
+    // The last accepted press of a momentary button, or edge of a switch
+    private long lastAcceptedAt;
+    private boolean level;
+
+    // Statistics
+    private long accepted;
+    private long rejected;
+    private long reported;
+
+    Debouncer(final String name, final long windowInMillis, final boolean momentary) {
+        this.name = name;
+        this.windowInNanos = TimeUnit.MILLISECONDS.toNanos(windowInMillis);
+        this.momentary = momentary;
+        this.lastAcceptedAt = System.nanoTime() - windowInNanos;
+    }
+
+    /**
+     * @param high true for a rising edge
+     * @param now  the nano time of the edge
+     * @return true when the edge is a press of a momentary button or a change of a switch
+     */
+    synchronized boolean accept(final boolean high, final long now) {
+        if (momentary && !high) {
+            // A release (or its bounce) is never a press
+            level = false;
+            return false;
+        }
+
+        if (now - lastAcceptedAt < windowInNanos) {
+            rejected++;
+            return false;
+        }
+
+        lastAcceptedAt = now;
+        accepted++;
+
+        final boolean changed = high != level;
+        level = high;
+
+        // A momentary press after a release which bounced away is still a press
+        return momentary || changed;
+    }
+
+    /**
+     * @param high the level of the pin read at startup
+     */
+    synchronized void setLevel(final boolean high) {
+        level = high;
+    }
+
+    /**
+     * @return the counters, or null when there were no edges since the previous call
+     */
+    synchronized String takeStatistics() {
+        if (accepted + rejected == reported) {
+            return null;
+        }
+        reported = accepted + rejected;
+        return String.format("%s %d/%d", name, accepted, rejected);
+    }
+}
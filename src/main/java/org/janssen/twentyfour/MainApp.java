@@ -7,14 +7,25 @@ import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
+import java.net.URI;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The 24s standalone application for the Raspberry PI black box  :)
@@ -23,12 +34,57 @@ import java.util.Date;
  */
 public class MainApp {
 
-    private final SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.S");
+    // SimpleDateFormat isn't thread safe, the sender, ping and GPIO threads all log
+    private final ThreadLocal<SimpleDateFormat> simpleDateFormat =
+            ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.S"));
 
     private final int THREE_HUNDRED_MILLIS = 300;
 
+    // Below the keep alive timeout of the server (20s), so the connection stays open
+    private final int PING_INTERVAL_IN_SECONDS = 10;
+
+    // One pooled client, the keep-alive connection is reused by every button press
+    private final PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager();
+    private final HttpClient httpClient = createHttpClient();
+
+    private final ScheduledExecutorService pinger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "24s-ping");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile long lastRequest = System.currentTimeMillis();
+
+    // The 24s commands are sent over the channel, the REST interfaces are the fallback
+    private final int CHANNEL_PORT = 8024;
+    private ControlChannel channel;
+
+    // The server clock minus the clock of the box in ms, measured every 10 seconds with the date REST call
+    private final int SYNC_INTERVAL_IN_SECONDS = 10;
+    private final int SYNC_SAMPLES = 3;
+    // A sample with a longer round trip is too inaccurate
+    private final long MAX_SYNC_ROUND_TRIP_IN_MILLIS = 100;
+    private volatile long clockOffset;
+    private volatile boolean clockSynced;
+
+    // A press which couldn't be sent within 2 seconds is too late to matter
+    private final long DEADLINE_IN_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    // The timer start/stop is retried this long before the other buttons get their turn
+    private final long TIMER_DEADLINE_IN_NANOS = TimeUnit.SECONDS.toNanos(3);
+
+    // The button presses, timestamped by the GPIO listeners and sent in order by the sender thread
+    private final BlockingQueue<ButtonEvent> events = new ArrayBlockingQueue<>(32);
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    // The debouncing state per button (pin)
+    private final Map<Button, Debouncer> debouncers = new EnumMap<>(Button.class);
+    private final int DEBOUNCE_LOG_INTERVAL_IN_SECONDS = 60;
+
     // The REST interfaces
     private HttpGet clockReq;
+    private HttpGet pingReq;
+    private HttpGet syncReq;
     private HttpGet isRunningReq;
     private HttpGet isStoppedReq;
 
@@ -38,6 +94,10 @@ public class MainApp {
     private HttpPut reset24Req;
     private HttpPut inc1Req;
     private HttpPut dec1Req;
+    private String startUrl;
+    private String stopUrl;
+    private String incUrl;
+    private String decUrl;
     private HttpPut startTimeoutReq;
     private HttpPut show24Req;
 
@@ -45,8 +105,45 @@ public class MainApp {
     private GpioPinDigitalOutput wifiLed = null;
     private GpioPinDigitalOutput appRunningLed = null;
 
-    // Debouncing state
-    private long lastContact = System.currentTimeMillis();
+    /**
+     * The buttons of the black box, the debounce window can be changed with -Dtwentyfour.debounce.<button>=ms
+     * (for example -Dtwentyfour.debounce.twenty_four=200).
+     */
+    private enum Button {
+        TIMER(false, 50), TIMEOUT(false, 300), FOURTEEN(true, 300), TWENTY_FOUR(true, 300),
+        INC(true, 300), DEC(true, 300), SHOW(false, 300);
+
+        // Repeated presses are sent as one request
+        private final boolean coalesces;
+
+        // The timer is a switch which bounces shortly, the others are push buttons
+        private final long debounceMillis;
+
+        Button(final boolean coalesces, final long debounceMillis) {
+            this.coalesces = coalesces;
+            this.debounceMillis = debounceMillis;
+        }
+
+        private long getDebounceMillis() {
+            return Long.getLong("twentyfour.debounce." + name().toLowerCase(), debounceMillis);
+        }
+    }
+
+    /**
+     * A button press (or release), timestamped when the GPIO event arrived.
+     */
+    private static final class ButtonEvent {
+        private final Button button;
+        private final boolean high;
+        private long pressedAt;
+        private int count = 1;
+
+        private ButtonEvent(final Button button, final boolean high, final long pressedAt) {
+            this.button = button;
+            this.high = high;
+            this.pressedAt = pressedAt;
+        }
+    }
 
     /**
      * Setup the URLs and GPIO listeners and then run for ever.
@@ -83,9 +180,17 @@ public class MainApp {
 
         createURLs(BASE_URL);
 
+        for (Button button : Button.values()) {
+            debouncers.put(button, new Debouncer(button.name(), button.getDebounceMillis(), button != Button.TIMER));
+        }
+
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             logger("<--MainApp--> Shutdown");
 
+            pinger.shutdownNow();
+            channel.close();
+            connectionManager.shutdown();
+
             wifiLed.low();
             appRunningLed.low();
         }));
@@ -97,8 +202,18 @@ public class MainApp {
         appRunningLed.high();
 
         // Check if WIFI works by calling the 24s clock REST method, try 5 times over 10 seconds
+        // This also opens the connection which the buttons use
         checkWifi();
 
+        pinger.scheduleWithFixedDelay(this::syncClock, 0, SYNC_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+        pinger.scheduleWithFixedDelay(this::ping, PING_INTERVAL_IN_SECONDS, PING_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+        pinger.scheduleWithFixedDelay(this::logDebounceStatistics,
+                DEBOUNCE_LOG_INTERVAL_IN_SECONDS, DEBOUNCE_LOG_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+
+        final Thread sender = new Thread(this::sendEvents, "24s-sender");
+        sender.setDaemon(true);
+        sender.start();
+
         // provision the GPIO pins as an input pin with its internal pull down resistor enabled
         final GpioPinDigitalInput start60Btn = gpio.provisionDigitalInputPin(RaspiPin.GPIO_14, PinPullResistance.PULL_DOWN);
         final GpioPinDigitalInput reset14Btn = gpio.provisionDigitalInputPin(RaspiPin.GPIO_07, PinPullResistance.PULL_DOWN);
@@ -110,30 +225,32 @@ public class MainApp {
         final GpioPinDigitalInput show24Btn = gpio.provisionDigitalInputPin(RaspiPin.GPIO_01, "24s on off", PinPullResistance.PULL_DOWN);
 
         // Check if timer button at startup is on or off and act accordingly
-        logger("Timer button is " + ((timerBtn.getState().isHigh()) ? "on" : "off"));
-        timerButton(timerBtn.getState());
+        final boolean timerOn = timerBtn.getState().isHigh();
+        logger("Timer button is " + (timerOn ? "on" : "off"));
+        debouncers.get(Button.TIMER).setLevel(timerOn);
+        offer(new ButtonEvent(Button.TIMER, timerOn, System.nanoTime()));
 
-        // create and register gpio pin listeners
+        // create and register gpio pin listeners, they only queue the event for the sender thread
         // The 24s timer button
-        timerBtn.addListener((GpioPinListenerDigital) event -> timerButton(timerBtn.getState()));
+        timerBtn.addListener((GpioPinListenerDigital) event -> enqueue(Button.TIMER, event.getState()));
 
         // The start 60s button
-        start60Btn.addListener((GpioPinListenerDigital) event -> handleEvent(startTimeoutReq));
+        start60Btn.addListener((GpioPinListenerDigital) event -> enqueue(Button.TIMEOUT, event.getState()));
 
         // The 14s reset button
-        reset14Btn.addListener((GpioPinListenerDigital) event -> handleEvent(reset14Req));
+        reset14Btn.addListener((GpioPinListenerDigital) event -> enqueue(Button.FOURTEEN, event.getState()));
 
         // The 24s reset button
-        reset24Btn.addListener((GpioPinListenerDigital) event -> handleEvent(reset24Req));
+        reset24Btn.addListener((GpioPinListenerDigital) event -> enqueue(Button.TWENTY_FOUR, event.getState()));
 
         // The +1s button
-        pls1SecondBtn.addListener((GpioPinListenerDigital) event -> handleEvent(inc1Req));
+        pls1SecondBtn.addListener((GpioPinListenerDigital) event -> enqueue(Button.INC, event.getState()));
 
         // The -1s button
-        mns1SecondBtn.addListener((GpioPinListenerDigital) event -> handleEvent(dec1Req));
+        mns1SecondBtn.addListener((GpioPinListenerDigital) event -> enqueue(Button.DEC, event.getState()));
 
         // 24s LED button
-        show24Btn.addListener((GpioPinListenerDigital) event -> handleEvent(show24Req));
+        show24Btn.addListener((GpioPinListenerDigital) event -> enqueue(Button.SHOW, event.getState()));
 
         logger(" ... App will continue running until the program is terminated.");
         logger(" ... PRESS <CTRL-C> TO STOP THE PROGRAM.");
@@ -153,14 +270,22 @@ public class MainApp {
         String REST_TIMEOUT_URL = BASE_URL + "/api/timeout/";
 
         clockReq = new HttpGet(REST_24_URL + "date");                                  // date
+        pingReq = new HttpGet(REST_24_URL + "date");                                   // Keep alive
+        syncReq = new HttpGet(REST_24_URL + "date?millis=true");                       // Clock sync
+
+        channel = new ControlChannel(URI.create(BASE_URL).getHost(), CHANNEL_PORT, "CAFEBABE");
 
         String SECRET_TOKEN = "?token=CAFEBABE";
-        startTimerReq = new HttpPut(REST_24_URL + "start" + SECRET_TOKEN);             // Start
-        stopTimerReq = new HttpPut(REST_24_URL + "stop" + SECRET_TOKEN);               // Stop
+        startUrl = REST_24_URL + "start" + SECRET_TOKEN;
+        stopUrl = REST_24_URL + "stop" + SECRET_TOKEN;
+        startTimerReq = new HttpPut(startUrl);                                         // Start
+        stopTimerReq = new HttpPut(stopUrl);                                           // Stop
         reset14Req = new HttpPut(REST_24_URL + "fourteen" + SECRET_TOKEN);             // 14s
         reset24Req = new HttpPut(REST_24_URL + "reset" + SECRET_TOKEN);                // 24s
-        inc1Req = new HttpPut(REST_24_URL + "inc" + SECRET_TOKEN);                     // +1s
-        dec1Req = new HttpPut(REST_24_URL + "dec" + SECRET_TOKEN);                     // -1s
+        incUrl = REST_24_URL + "inc" + SECRET_TOKEN;
+        decUrl = REST_24_URL + "dec" + SECRET_TOKEN;
+        inc1Req = new HttpPut(incUrl);                                                 // +1s
+        dec1Req = new HttpPut(decUrl);                                                 // -1s
         show24Req = new HttpPut(REST_24_URL + "show" + SECRET_TOKEN);                  // Show 24s LEDs
 
         startTimeoutReq = new HttpPut(REST_TIMEOUT_URL + "start" + SECRET_TOKEN);      // 60s
@@ -171,18 +296,109 @@ public class MainApp {
     }
 
     /**
-     * Configures the httpClient to connect to the URL provided.
+     * Configures the pooled httpClient, the connections are kept alive between the requests.
      */
-    private HttpClient getHttpClient() {
-        HttpClient httpClient = new DefaultHttpClient();
-        final HttpParams params = httpClient.getParams();
+    private HttpClient createHttpClient() {
+        connectionManager.setMaxTotal(4);
+        connectionManager.setDefaultMaxPerRoute(4);
+
+        final HttpClient client = new DefaultHttpClient(connectionManager);
+        final HttpParams params = client.getParams();
         int FIVE_HUNDRED_MILLIS = 500;
         HttpConnectionParams.setConnectionTimeout(params, FIVE_HUNDRED_MILLIS);
         HttpConnectionParams.setSoTimeout(params, FIVE_HUNDRED_MILLIS);
-        // ConnManagerParams.setTimeout(params, 3000);
+        HttpConnectionParams.setTcpNoDelay(params, true);
+        return client;
+    }
+
+    private HttpClient getHttpClient() {
+        lastRequest = System.currentTimeMillis();
         return httpClient;
     }
 
+    /**
+     * Keep the connection warm when no button was pressed for a while.
+     */
+    private void ping() {
+        if (System.currentTimeMillis() - lastRequest < PING_INTERVAL_IN_SECONDS * 1000) {
+            return;
+        }
+
+        try {
+            final int status = channel.ping();
+            wifiLed.high();
+            logger(String.format("PING %d (%d ms)", status, channel.getLastRoundTrip()));
+            return;
+
+        } catch (IOException e) {
+            // Keep the HTTP connection warm instead
+            logger("CHANNEL PING FAILED - " + e.getMessage());
+        }
+
+        final long start = System.nanoTime();
+        try {
+            final HttpResponse response = getHttpClient().execute(pingReq);
+            EntityUtils.consume(response.getEntity());
+
+            if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
+                wifiLed.high();
+            }
+            logger(String.format("PING %d (%d ms)", response.getStatusLine().getStatusCode(), elapsed(start)));
+
+        } catch (IOException e) {
+            // Reconnect with the next request
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+            wifiLed.low();
+            logger("PING FAILED - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Measure the offset with the server clock, the sample with the shortest round trip is the most accurate.
+     */
+    private void syncClock() {
+        long bestRoundTrip = Long.MAX_VALUE;
+        long bestOffset = 0;
+
+        for (int i = 0; i < SYNC_SAMPLES; i++) {
+            try {
+                final long sentAt = System.currentTimeMillis();
+                final HttpResponse response = httpClient.execute(syncReq);
+                final String body = EntityUtils.toString(response.getEntity());
+                final long receivedAt = System.currentTimeMillis();
+
+                if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK && receivedAt - sentAt < bestRoundTrip) {
+                    bestRoundTrip = receivedAt - sentAt;
+                    bestOffset = Long.parseLong(body.replaceAll("[^0-9]", "")) - (sentAt + receivedAt) / 2;
+                }
+            } catch (IOException | NumberFormatException e) {
+                logger("CLOCK SYNC FAILED - " + e.getMessage());
+            }
+        }
+
+        if (bestRoundTrip <= MAX_SYNC_ROUND_TRIP_IN_MILLIS) {
+            clockOffset = bestOffset;
+            clockSynced = true;
+            logger(String.format("CLOCK OFFSET %d ms (%d ms round trip)", bestOffset, bestRoundTrip));
+        }
+    }
+
+    /**
+     * @param pressedAt the nano time of the button press
+     * @return the moment of the press on the server clock in epoch millis, or null when the clock isn't synchronised
+     */
+    private Long serverTime(final long pressedAt) {
+        if (!clockSynced) {
+            return null;
+        }
+        return System.currentTimeMillis() - elapsed(pressedAt) + clockOffset;
+    }
+
+    private static long elapsed(final long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
     /**
      * Check if we can access the scoreboard over the network.
      */
@@ -192,9 +408,7 @@ public class MainApp {
         try {
             logger(clockReq.toString());
 
-            final HttpClient httpClient = getHttpClient();
-
-            final HttpResponse response = httpClient.execute(clockReq);
+            final HttpResponse response = getHttpClient().execute(clockReq);
             logger("Response: "+EntityUtils.toString(response.getEntity()));
 
             if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
@@ -213,56 +427,39 @@ public class MainApp {
     }
 
     /**
-     * Handle the start/stop button for the 24s.
+     * Handle the 14, 24, +1, -1 sec buttons.
      *
-     * @param isHigh    is the pin state high?
-     * @param putHigh   the http put High state request
-     * @param putLow    the http put Low state request
+     * @param command  the channel command
+     * @param putReq   the http put request
      */
-    private void handleEvent(final boolean isHigh, final HttpPut putHigh, final HttpPut putLow) {
-
-        if (hasDebounceOccured()) return;
+    private void handleEvent(final String command, final HttpPut putReq, final long pressedAt) {
 
         wifiLed.high();
 
-        HttpPut retryPut = null;
-
-        HttpResponse response = null;
-
         try {
+            final int status = fire(command, putReq, pressedAt);
 
-            if (isHigh) {
-                retryPut = putHigh;
-                response = getHttpClient().execute(putHigh);
-            } else if (putLow != null) {
-                retryPut = putLow;
-                response = getHttpClient().execute(putLow);
-            }
-
-            logger(retryPut + " " + ((response != null) ?
-                    response.getStatusLine().getStatusCode() + " " +
-                    EntityUtils.toString(response.getEntity()) : "NULL"));
-
-            if (response != null &&
-                response.getStatusLine().getStatusCode() != HttpStatus.SC_OK &&
-                response.getStatusLine().getStatusCode() != HttpStatus.SC_BAD_REQUEST) {
+            if (status != HttpStatus.SC_OK &&
+                status != HttpStatus.SC_BAD_REQUEST &&
+                !isTooLate(pressedAt)) {
 
                 logger("RETRY");
-
-                response = getHttpClient().execute(retryPut);
-                logger(retryPut + " " + ((response != null) ?
-                        response.getStatusLine().getStatusCode() + " " +
-                        EntityUtils.toString(response.getEntity()) : "NULL"));
+                fire(command, putReq, pressedAt);
 
                 wifiLed.blink(500, 3000);
             }
+        } catch (ControlChannel.UnacknowledgedException e) {
+            // The server may have executed it, a retry could count the press twice
+            logger("NO RETRY - " + e.getMessage());
+            wifiLed.blink(500, 3000);
+
         } catch (IOException e) {
             try {
-                logger("EXCEPTION RETRY");
-                response = getHttpClient().execute(retryPut);
-                logger(retryPut + " " + ((response != null) ?
-                        response.getStatusLine().getStatusCode() + " " +
-                        EntityUtils.toString(response.getEntity()) : "NULL"));
+                if (!isTooLate(pressedAt)) {
+                    logger("EXCEPTION RETRY");
+                    fire(command, putReq, pressedAt);
+                }
+
             } catch (IOException e1) {
                 e1.printStackTrace();
             }
@@ -272,117 +469,258 @@ public class MainApp {
     }
 
     /**
-     * Handle the 14, 24, +1, -1 sec buttons.
+     * Send the command over the channel, or execute the request when the command couldn't be sent over the channel.
+     * A command which was sent but not acknowledged isn't sent again.
      *
-     * @param putReq   the http put request
+     * @param command   the channel command
+     * @param req       the http request
+     * @param pressedAt the nano time of the button press
+     * @return the status
      */
-    private void handleEvent(final HttpPut putReq) {
+    private int fire(final String command, final HttpRequestBase req, final long pressedAt) throws IOException {
+        try {
+            final int status = channel.send(command);
+            lastRequest = System.currentTimeMillis();
+            logger(String.format("%s %d (%d ms round trip, %d ms since press)", command, status,
+                    channel.getLastRoundTrip(), elapsed(pressedAt)));
+            return status;
 
-        if (hasDebounceOccured()) return;
+        } catch (ControlChannel.UnacknowledgedException e) {
+            throw e;
 
-        wifiLed.high();
+        } catch (IOException e) {
+            logger("CHANNEL FAILED, USING HTTP - " + e.getMessage());
+        }
 
-        try {
-            HttpResponse response = fireRequest(putReq);
+        return fireRequest(req, pressedAt).getStatusLine().getStatusCode();
+    }
 
-            if (response != null &&
-                response.getStatusLine().getStatusCode() != HttpStatus.SC_OK &&
-                response.getStatusLine().getStatusCode() != HttpStatus.SC_BAD_REQUEST) {
+    /**
+     * Execute the request and log the response with the time since the button was pressed.
+     *
+     * @param req       the http request
+     * @param pressedAt the nano time of the button press
+     */
+    private HttpResponse fireRequest(final HttpRequestBase req, final long pressedAt) throws IOException {
+        final long start = System.nanoTime();
+        final HttpResponse response = getHttpClient().execute(req);
+        final String body = EntityUtils.toString(response.getEntity());
+        logger(String.format("%s %d %s (%d ms request, %d ms since press)", req,
+                response.getStatusLine().getStatusCode(), body, elapsed(start), elapsed(pressedAt)));
+        return response;
+    }
 
-                logger("RETRY");
-                fireRequest(putReq);
+    /**
+     * Log the accepted/rejected edges per button, only when a button was used.
+     */
+    private void logDebounceStatistics() {
+        final StringBuilder statistics = new StringBuilder();
 
-                wifiLed.blink(500, 3000);
+        for (Debouncer debouncer : debouncers.values()) {
+            final String counters = debouncer.takeStatistics();
+            if (counters != null) {
+                statistics.append(' ').append(counters);
             }
-        } catch (IOException e) {
-            try {
-                logger("EXCEPTION RETRY");
-                fireRequest(putReq);
+        }
 
-            } catch (IOException e1) {
-                e1.printStackTrace();
+        if (statistics.length() > 0) {
+            logger("DEBOUNCE (accepted/rejected)" + statistics);
+        }
+    }
+
+    private boolean isTooLate(final long pressedAt) {
+        return System.nanoTime() - pressedAt > DEADLINE_IN_NANOS;
+    }
+
+    /**
+     * Called on the pi4j event thread, so only debounce, timestamp and queue the press.
+     * A bounce (or the release of a push button) doesn't create an event.
+     */
+    private void enqueue(final Button button, final PinState state) {
+        final long now = System.nanoTime();
+        final boolean high = state.isHigh();
+
+        if (debouncers.get(button).accept(high, now)) {
+            offer(new ButtonEvent(button, high, now));
+        }
+    }
+
+    private void offer(final ButtonEvent event) {
+        if (!events.offer(event)) {
+            droppedEvents.incrementAndGet();
+        }
+    }
+
+    /**
+     * The sender thread, sends the queued button events one by one in the order they were pressed.
+     */
+    private void sendEvents() {
+        try {
+            while (true) {
+                final ButtonEvent event = events.take();
+
+                // One failing press must not stop the buttons
+                try {
+                    sendEvent(event);
+                } catch (RuntimeException e) {
+                    logger(event.button + " failed - " + e);
+                    e.printStackTrace();
+                }
             }
-            wifiLed.blink(500, 3000);
-            e.printStackTrace();
+        } catch (InterruptedException e) {
+            logger("<--MainApp--> Sender stopped");
         }
     }
 
-    private HttpResponse fireRequest(final HttpPut putReq) throws IOException {
-        HttpResponse response = getHttpClient().execute(putReq);
-        logger(putReq+ " " + ((response != null) ?
-                response.getStatusLine().getStatusCode() + " " + EntityUtils.toString(response.getEntity()) : "NULL"));
-        return response;
+    private void sendEvent(final ButtonEvent event) {
+        if (droppedEvents.get() > 0) {
+            logger(droppedEvents.getAndSet(0) + " button events dropped, the queue was full");
+        }
+
+        if (event.button == Button.TIMER) {
+            timerButton(event);
+            return;
+        }
+
+        coalesce(event);
+
+        if (isTooLate(event.pressedAt)) {
+            logger(String.format("%s dropped, pressed %d ms ago", event.button,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - event.pressedAt)));
+            return;
+        }
+
+        handleEvent(command(event), request(event), event.pressedAt);
     }
 
     /**
-     * Debounce of 300ms check.
-     *
-     * @return true
+     * Take the presses of the same button which are next in the queue, for example 3 times +1s becomes +3s.
      */
-    private boolean hasDebounceOccured() {
-        final long now = System.currentTimeMillis();
-        final long debounce = now - THREE_HUNDRED_MILLIS;
+    private void coalesce(final ButtonEvent event) {
+        if (!event.button.coalesces) {
+            return;
+        }
 
-        if (lastContact > debounce) {
-            logger(String.format(">> HAS DEBOUNCED @ %d ms", lastContact - debounce));
-            return true;
-        } else {
-            logger(String.format("OK @ %d ms", debounce - lastContact));
-            lastContact = now;
-            return false;
+        ButtonEvent next;
+        while ((next = events.peek()) != null && next.button == event.button) {
+            events.poll();
+
+            event.count++;
+            event.pressedAt = next.pressedAt;
+        }
+
+        if (event.count > 1) {
+            logger(String.format("%s pressed %d times", event.button, event.count));
+        }
+    }
+
+    private HttpPut request(final ButtonEvent event) {
+        switch (event.button) {
+            case TIMEOUT:
+                return startTimeoutReq;
+            case FOURTEEN:
+                return reset14Req;
+            case TWENTY_FOUR:
+                return reset24Req;
+            case INC:
+                return event.count == 1 ? inc1Req : new HttpPut(incUrl + "&seconds=" + event.count);
+            case DEC:
+                return event.count == 1 ? dec1Req : new HttpPut(decUrl + "&seconds=" + event.count);
+            default:
+                return show24Req;
+        }
+    }
+
+    private String command(final ButtonEvent event) {
+        switch (event.button) {
+            case TIMEOUT:
+                return "TIMEOUT";
+            case FOURTEEN:
+                return "FOURTEEN";
+            case TWENTY_FOUR:
+                return "RESET";
+            case INC:
+                return "INC " + event.count;
+            case DEC:
+                return "DEC " + event.count;
+            default:
+                return "SHOW";
         }
     }
 
+    private boolean hasNewerTimerEvent() {
+        for (ButtonEvent queued : events) {
+            if (queued.button == Button.TIMER) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void logger(final String msg) {
-        System.out.println(String.format("%s - %s", simpleDateFormat.format(new Date()), msg));
+        System.out.println(String.format("%s - %s", simpleDateFormat.get().format(new Date()), msg));
     }
 
     /**
      * Timer button logic which will only stopped when the timer is actually started or stopped!
+     * After 3 seconds the other buttons get their turn first, unless the timer button changed again.
      *
-     * @param state the timer button state
+     * @param event the timer button event
      */
-    private void timerButton(final PinState state) {
+    private void timerButton(final ButtonEvent event) {
 
-        boolean isConfirmed = false;
-        boolean isHigh = state.isHigh();
+        final long deadline = System.nanoTime() + TIMER_DEADLINE_IN_NANOS;
 
         do {
-            handleEvent(isHigh, startTimerReq, stopTimerReq);
-
-            final HttpResponse response;
-            try {
-                if (isHigh) {
+            if (hasNewerTimerEvent()) {
+                logger("Timer button changed again");
+                return;
+            }
 
-                    response = getHttpClient().execute(isRunningReq);
+            wifiLed.high();
 
-                    logger("Check running @ " + isRunningReq.toString() + " - " +
-                            + response.getStatusLine().getStatusCode() + " "
-                            + EntityUtils.toString(response.getEntity()));
+            // The server starts/stops the clock as of the press (or now when the clock isn't synchronised)
+            final Long at = serverTime(event.pressedAt);
 
+            try {
+                if (event.high) {
+                    fire(at == null ? "START" : "START " + at,
+                         at == null ? startTimerReq : new HttpPut(startUrl + "&at=" + at), event.pressedAt);
                 } else {
-                    response = getHttpClient().execute(isStoppedReq);
+                    fire(at == null ? "STOP" : "STOP " + at,
+                         at == null ? stopTimerReq : new HttpPut(stopUrl + "&at=" + at), event.pressedAt);
+                }
 
-                    logger("Check stopped @ " + isStoppedReq.toString() + " - "
-                            + response.getStatusLine().getStatusCode() + " "
-                            + EntityUtils.toString(response.getEntity()));
+                final int status;
+                if (event.high) {
+                    logger("Check running");
+                    status = fire("RUNNING", isRunningReq, event.pressedAt);
+                } else {
+                    logger("Check stopped");
+                    status = fire("STOPPED", isStoppedReq, event.pressedAt);
                 }
 
-                if (response.getStatusLine().getStatusCode() ==  HttpStatus.SC_OK) {
-                    isConfirmed = true;
+                if (status == HttpStatus.SC_OK) {
+                    return;
                 }
             } catch (IOException e) {
                 logger("Start/Stop event not processed, retry in 300ms");
                 e.printStackTrace();
-                try {
-                    Thread.sleep(THREE_HUNDRED_MILLIS);
-                } catch (InterruptedException e1) {
-                    e1.printStackTrace();
-                }
             }
 
+            try {
+                Thread.sleep(THREE_HUNDRED_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+        } while (System.nanoTime() < deadline);
+
         // This logic will loop until either the 24s timer is started or stopped (as requested by Jan :)
-        } while (!isConfirmed);
+        if (!hasNewerTimerEvent()) {
+            offer(event);
+        }
     }
 
     private void checkWifi() throws InterruptedException {
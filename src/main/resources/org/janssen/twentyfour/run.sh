@@ -2,11 +2,12 @@
 #
 # ~/twentyfour/classes
 #
-# ~/twentyfour/lib $ ls -l
-#  -rw-r----- 1 pi pi  60686 Dec 14 12:43 commons-logging-1.1.1.jar
-#  -rw-r--r-- 1 pi pi 289954 Dec 14 12:36 httpclient-4.0.jar
-#  -rw-r--r-- 1 pi pi 172888 Dec 14 12:38 httpcore-4.0.1.jar
-#  -rw-r--r-- 1 pi pi 170200 Dec 14 12:39 pi4j-core-0.0.5.jar
+# ~/twentyfour/lib (httpclient 4.2 or newer, for the pooled keep-alive connection)
+#  commons-logging-1.1.1.jar
+#  commons-codec-1.6.jar
+#  httpclient-4.2.5.jar
+#  httpcore-4.2.4.jar
+#  pi4j-core-1.0.jar
 #
 
 sudo rm /home/pi/twentyFour.bak
@@ -14,6 +15,6 @@ sudo mv /home/pi/twentyFour.log /home/pi/twentyFour.log.bak
 
 ip addr show
 
-sudo java -classpath /home/pi/twentyfour/classes:/home/pi/twentyfour/lib/httpclient-4.0.jar:/home/pi/twentyfour
-/lib/httpcore-4.0.1.jar:/home/pi/twentyfour/lib/pi4j-core-0.0.5.jar:/home/pi/twentyfour/lib/commons-logging-1.1
+sudo java -classpath /home/pi/twentyfour/classes:/home/pi/twentyfour/lib/httpclient-4.2.5.jar:/home/pi/twentyfour
+/lib/httpcore-4.2.4.jar:/home/pi/twentyfour/lib/commons-codec-1.6.jar:/home/pi/twentyfour/lib/pi4j-core-1.0.jar:/home/pi/twentyfour/lib/commons-logging-1.1
 .1.jar org.janssen.twentyfour.MainApp >> /home/pi/twentyFour.log
\ No newline at end of file
@@ -0,0 +1,319 @@
+package org.janssen.scoreboard.controller;
+
+import org.janssen.scoreboard.dao.GameJournal;
+import org.janssen.scoreboard.model.type.GPIOType;
+import org.janssen.scoreboard.model.type.GameType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Hammers start/stop/inc/dec of the clock controllers from many threads,
+ * while another thread ticks the clocks and the readers check they never see an impossible value.
+ *
+ * @author Stephan Janssen
+ */
+public class ClockControllerStressTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 20000;
+    private static final int MAX_SECONDS = 40;
+
+    private GameClockController gameClockController;
+    private TwentyFourClockController twentyFourClockController;
+
+    // The last values sent to the display
+    private final AtomicInteger shownClock = new AtomicInteger(-1);
+    private final AtomicInteger shownTwentyFour = new AtomicInteger(-1);
+
+    @Before
+    public void init() {
+        final DeviceController device = new DeviceController() {
+            @Override
+            public void setClockOnly(final int seconds) {
+                shownClock.set(seconds);
+            }
+
+            @Override
+            public void setClockTenths(final int tenths) {
+                shownClock.set((tenths + 9) / 10);
+            }
+
+            @Override
+            public void setTwentyFour(final int seconds) {
+                shownTwentyFour.set(seconds);
+            }
+        };
+
+        final ClockScheduler clockScheduler = new ClockScheduler() {
+            @Override
+            public void schedule(final ScheduledClock clock, final long deadline) {
+                // The ticker thread ticks all the time
+            }
+
+            @Override
+            public void cancel(final ScheduledClock clock) {
+            }
+        };
+
+        final GPIOController gpioController = new GPIOController() {
+            @Override
+            public void setBuzz(final GPIOType type) {
+            }
+        };
+
+        twentyFourClockController = new TwentyFourClockController();
+        twentyFourClockController.device = device;
+        twentyFourClockController.gpioController = gpioController;
+        twentyFourClockController.clockScheduler = clockScheduler;
+
+        gameClockController = new GameClockController();
+        gameClockController.device = device;
+        gameClockController.gpioController = gpioController;
+        gameClockController.clockScheduler = clockScheduler;
+        gameClockController.gameJournal = new GameJournal();
+        gameClockController.twentyFourClockController = twentyFourClockController;
+    }
+
+    @Test
+    public void hammerGameClock() throws Exception {
+        final Random random = new Random(1);
+
+        final Throwable failure = hammer(new Operation() {
+            @Override
+            public void run(final int operation, final int seconds) {
+                switch (operation) {
+                    case 0:
+                        gameClockController.start(seconds, GameType.BASKET, false);
+                        break;
+                    case 1:
+                        gameClockController.stop();
+                        break;
+                    case 2:
+                        if (gameClockController.isNotRunning()) {
+                            gameClockController.setSeconds(Math.min(MAX_SECONDS, gameClockController.getSeconds() + 1));
+                        }
+                        break;
+                    default:
+                        if (gameClockController.isNotRunning()) {
+                            gameClockController.setSeconds(Math.max(0, gameClockController.getSeconds() - 1));
+                        }
+                }
+            }
+
+            @Override
+            public void tick() {
+                gameClockController.tick(MonotonicClock.now());
+            }
+
+            @Override
+            public void read() {
+                final int seconds = gameClockController.getSeconds();
+                assertTrue("Impossible clock " + seconds, seconds >= 0 && seconds <= MAX_SECONDS);
+            }
+        }, random);
+
+        assertNull(failure);
+
+        gameClockController.stop();
+        assertFalse(gameClockController.isRunning());
+
+        // A stopped clock doesn't move and the display shows the latest state
+        final int seconds = gameClockController.getSeconds();
+        Thread.sleep(50);
+        assertEquals(seconds, gameClockController.getSeconds());
+
+        gameClockController.setSeconds(seconds);
+        assertEquals(seconds, shownClock.get());
+    }
+
+    @Test
+    public void hammerTwentyFourClock() throws Exception {
+        final Random random = new Random(2);
+
+        final Throwable failure = hammer(new Operation() {
+            @Override
+            public void run(final int operation, final int seconds) {
+                switch (operation) {
+                    case 0:
+                        twentyFourClockController.start();
+                        break;
+                    case 1:
+                        twentyFourClockController.stop();
+                        break;
+                    case 2:
+                        twentyFourClockController.setTwentyFourSeconds(Math.min(24, twentyFourClockController.getTwentyFourSeconds() + 1));
+                        break;
+                    default:
+                        if (seconds % 7 == 0) {
+                            twentyFourClockController.setFourTeen();
+                        } else {
+                            twentyFourClockController.setTwentyFourSeconds(Math.max(1, twentyFourClockController.getTwentyFourSeconds() - 1));
+                        }
+                }
+            }
+
+            @Override
+            public void tick() {
+                twentyFourClockController.tick(MonotonicClock.now());
+            }
+
+            @Override
+            public void read() {
+                final int seconds = twentyFourClockController.getTwentyFourSeconds();
+                assertTrue("Impossible 24s " + seconds, seconds >= 0 && seconds <= 24);
+            }
+        }, random);
+
+        assertNull(failure);
+
+        twentyFourClockController.stop();
+        assertFalse(twentyFourClockController.isRunning());
+
+        final int seconds = twentyFourClockController.getTwentyFourSeconds();
+        Thread.sleep(50);
+        assertEquals(seconds, twentyFourClockController.getTwentyFourSeconds());
+    }
+
+    @Test
+    public void twentyFourCompensationIsBounded() throws Exception {
+        twentyFourClockController.reset();
+
+        // A start can't go back before the reset
+        twentyFourClockController.startAt(System.currentTimeMillis() - 5000);
+        assertEquals(24, twentyFourClockController.getTwentyFourSeconds());
+        twentyFourClockController.stop();
+
+        twentyFourClockController.reset();
+        Thread.sleep(1200);
+
+        // Pressed 5 seconds ago, only a second is compensated
+        twentyFourClockController.startAt(System.currentTimeMillis() - 5000);
+        assertTrue(twentyFourClockController.isRunning());
+        assertEquals(23, twentyFourClockController.getTwentyFourSeconds());
+
+        // A stop can't go back before the start
+        twentyFourClockController.stopAt(System.currentTimeMillis() - 5000);
+        assertFalse(twentyFourClockController.isRunning());
+        assertEquals(24, twentyFourClockController.getTwentyFourSeconds());
+        assertEquals(24, shownTwentyFour.get());
+    }
+
+    @Test
+    public void gameClockExpiryStopsTwentyFour() throws Exception {
+        gameClockController.setSeconds(1);
+        twentyFourClockController.reset();
+
+        gameClockController.start(1, GameType.BASKET, false);
+        twentyFourClockController.start();
+
+        Thread.sleep(1100);
+        gameClockController.tick(MonotonicClock.now());
+
+        assertFalse(gameClockController.isRunning());
+        assertFalse(twentyFourClockController.isRunning());
+        assertEquals(0, gameClockController.getSeconds());
+        assertEquals(0, shownClock.get());
+    }
+
+    private interface Operation {
+        void run(int operation, int seconds);
+
+        void tick();
+
+        void read();
+    }
+
+    /**
+     * @return the first failure of any thread (or null)
+     */
+    private Throwable hammer(final Operation operation, final Random random) throws InterruptedException {
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        final List<Thread> writers = new ArrayList<Thread>();
+        final List<Thread> others = new ArrayList<Thread>();
+
+        for (int i = 0; i < THREADS; i++) {
+            final long seed = random.nextLong();
+            writers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final Random threadRandom = new Random(seed);
+                    try {
+                        startSignal.await();
+                        for (int j = 0; j < ITERATIONS && failure.get() == null; j++) {
+                            operation.run(threadRandom.nextInt(4), 1 + threadRandom.nextInt(MAX_SECONDS));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+
+        others.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    startSignal.await();
+                    while (!done.get()) {
+                        operation.tick();
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        }));
+
+        for (int i = 0; i < 2; i++) {
+            others.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startSignal.await();
+                        while (!done.get()) {
+                            operation.read();
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : writers) {
+            thread.start();
+        }
+        for (Thread thread : others) {
+            thread.start();
+        }
+
+        startSignal.countDown();
+
+        for (Thread thread : writers) {
+            thread.join(TimeUnit.MINUTES.toMillis(1));
+        }
+
+        done.set(true);
+
+        for (Thread thread : others) {
+            thread.join(TimeUnit.MINUTES.toMillis(1));
+        }
+
+        return failure.get();
+    }
+}
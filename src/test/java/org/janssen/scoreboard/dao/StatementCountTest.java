@@ -0,0 +1,162 @@
+package org.janssen.scoreboard.dao;
+
+import org.apache.openjpa.lib.jdbc.AbstractJDBCListener;
+import org.apache.openjpa.lib.jdbc.JDBCEvent;
+import org.apache.openjpa.persistence.OpenJPAPersistence;
+import org.janssen.scoreboard.model.Game;
+import org.janssen.scoreboard.model.Team;
+import org.janssen.scoreboard.model.type.AgeCategory;
+import org.janssen.scoreboard.model.type.GameType;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counts the SQL statements the DAO prepares against HSQLDB, so a game doesn't go back to a query per team
+ * and the write behind flush doesn't go back to a statement per entity.
+ *
+ * @author Stephan Janssen
+ */
+public class StatementCountTest {
+
+    private static EntityManagerFactory factory;
+
+    private EntityManager em;
+    private DAO dao;
+    private long gameId;
+
+    @BeforeClass
+    public static void start() {
+        factory = OpenJPAPersistence.createEntityManagerFactory("scoreboard-statement-count",
+                                                               "META-INF/statement-count-persistence.xml");
+    }
+
+    @AfterClass
+    public static void stop() {
+        if (factory != null) {
+            factory.close();
+        }
+    }
+
+    @Before
+    public void init() {
+        em = factory.createEntityManager();
+        dao = new DAO();
+        dao.em = em;
+
+        final Team teamA = new Team();
+        teamA.setName("Home");
+        teamA.setKey("A");
+
+        final Team teamB = new Team();
+        teamB.setName("Visitors");
+        teamB.setKey("B");
+
+        final Game game = new Game();
+        game.setGameType(GameType.BASKET);
+        game.setAgeCategory(AgeCategory.SENIOREN);
+        game.setCourt("A");
+        game.setTeamA(teamA);
+        game.setTeamB(teamB);
+
+        em.getTransaction().begin();
+        dao.create(teamA);
+        dao.create(teamB);
+        dao.create(game);
+        em.getTransaction().commit();
+
+        gameId = game.getId();
+
+        // Nothing is read from the persistence context
+        em.clear();
+        StatementCounter.reset();
+    }
+
+    @After
+    public void close() {
+        em.close();
+    }
+
+    @Test
+    public void findWithTeamsIsOneQuery() {
+        final Game game = dao.queryFindById(Game.class, "game.findWithTeams", gameId);
+
+        assertEquals("Home", game.getTeamA().getName());
+        assertEquals("Visitors", game.getTeamB().getName());
+
+        final List<String> statements = StatementCounter.getStatements();
+        assertEquals(statements.toString(), 1, statements.size());
+        assertTrue(statements.get(0), statements.get(0).toUpperCase().startsWith("SELECT"));
+    }
+
+    @Test
+    public void updateAllIsOneBatchPerTable() {
+        final Game game = dao.queryFindById(Game.class, "game.findWithTeams", gameId);
+        em.clear();
+
+        // The live game store merges detached copies
+        game.setQuarter(2);
+        game.getTeamA().setScore(2);
+        game.getTeamB().setScore(3);
+
+        StatementCounter.reset();
+
+        em.getTransaction().begin();
+        dao.updateAll(Arrays.asList(game.getTeamA(), game.getTeamB(), game));
+        em.getTransaction().commit();
+
+        final List<String> statements = StatementCounter.getStatements();
+
+        int updates = 0;
+        for (String statement : statements) {
+            if (statement.toUpperCase().startsWith("UPDATE")) {
+                updates++;
+            }
+        }
+
+        // One (batched) update of both teams and one of the game, without the batch limit it's an update per entity
+        assertEquals(statements.toString(), 2, updates);
+
+        // At most the loads of the merged entities
+        assertTrue(statements.toString(), statements.size() - updates <= 3);
+
+        em.clear();
+        final Game updated = dao.queryFindById(Game.class, "game.findWithTeams", gameId);
+        assertEquals(2, (int) updated.getQuarter());
+        assertEquals(2, (int) updated.getTeamA().getScore());
+        assertEquals(3, (int) updated.getTeamB().getScore());
+    }
+
+    /**
+     * Collects the SQL of every prepared statement, configured in statement-count-persistence.xml.
+     */
+    public static class StatementCounter extends AbstractJDBCListener {
+
+        private static final List<String> STATEMENTS = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void beforePrepareStatement(final JDBCEvent event) {
+            STATEMENTS.add(event.getSQL());
+        }
+
+        static void reset() {
+            STATEMENTS.clear();
+        }
+
+        static List<String> getStatements() {
+            return new ArrayList<String>(STATEMENTS);
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.janssen.scoreboard.model.Team;
 import org.janssen.scoreboard.model.Token;
 import org.janssen.scoreboard.model.type.GPIOType;
 import org.janssen.scoreboard.model.type.GameType;
+import org.janssen.scoreboard.service.command.GameCommandLog;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -49,6 +50,7 @@ public class QuarterServiceTest {
         quarterService.teamDAO = mockTeamDAO;
         quarterService.device = mockDeviceController;
         quarterService.gpioController = mockGPIOController;
+        quarterService.commandLog = new GameCommandLog();
     }
 
     @Test
@@ -82,8 +84,9 @@ public class QuarterServiceTest {
         expectLastCall().times(2);
         mockGPIOController.showTwentyFourSeconds(eq(true));
         expectLastCall().times(2);
-        expect(mockTeamDAO.update(isA(Team.class))).andReturn(teamA).times(3);
-        expect(mockTeamDAO.update(isA(Team.class))).andReturn(teamB).times(3);
+        // Both teams are updated at once, once per quarter change
+        mockTeamDAO.update(teamA, teamB);
+        expectLastCall().times(2);
         expect(mockGameDAO.update(eq(game))).andReturn(game).times(2);
         mockDeviceController.setFoulsHome(eq(0));
         expectLastCall().times(2);
@@ -91,6 +94,10 @@ public class QuarterServiceTest {
         expectLastCall().times(2);
         mockDeviceController.setClockOnly(eq(600));
         expectLastCall().times(2);
+        mockDeviceController.publishQuarter(anyLong(), anyInt());
+        expectLastCall().times(2);
+        mockDeviceController.setTimeouts(isA(Team.class));
+        expectLastCall().times(2);
         mockGPIOController.setLed(GPIOType.TIME_OUT_H1, false);
         mockGPIOController.setLed(GPIOType.TIME_OUT_V1, false);
         mockGPIOController.setLed(GPIOType.TIME_OUT_H2, false);
@@ -160,8 +167,9 @@ public class QuarterServiceTest {
         expectLastCall().times(4);
         mockGPIOController.showTwentyFourSeconds(eq(true));
         expectLastCall().times(4);
-        expect(mockTeamDAO.update(isA(Team.class))).andReturn(teamA).times(3);
-        expect(mockTeamDAO.update(isA(Team.class))).andReturn(teamB).times(3);
+        // Fouls reset in the 2nd and 4th quarter, timeouts in the 5th
+        mockTeamDAO.update(teamA, teamB);
+        expectLastCall().times(3);
         expect(mockGameDAO.update(eq(game))).andReturn(game).times(4);
         mockDeviceController.setFoulsHome(eq(0));
         expectLastCall().times(4);
@@ -169,6 +177,10 @@ public class QuarterServiceTest {
         expectLastCall().times(4);
         mockDeviceController.setClockOnly(eq(600));
         expectLastCall().times(4);
+        mockDeviceController.publishQuarter(anyLong(), anyInt());
+        expectLastCall().times(4);
+        mockDeviceController.setTimeouts(isA(Team.class));
+        expectLastCall().times(2);
         mockGPIOController.setLed(GPIOType.TIME_OUT_H1, false);
         mockGPIOController.setLed(GPIOType.TIME_OUT_V1, false);
         mockGPIOController.setLed(GPIOType.TIME_OUT_H2, false);
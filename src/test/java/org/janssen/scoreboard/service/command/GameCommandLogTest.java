@@ -0,0 +1,116 @@
+package org.janssen.scoreboard.service.command;
+
+import org.janssen.scoreboard.model.Game;
+import org.janssen.scoreboard.model.Team;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.janssen.scoreboard.service.command.GameCommand.Field;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Stephan Janssen
+ */
+public class GameCommandLogTest {
+
+    private static final long GAME_ID = 100L;
+
+    private GameCommandLog commandLog;
+
+    private Game game;
+
+    @Before
+    public void init() {
+        commandLog = new GameCommandLog();
+
+        game = new Game();
+        game.setId(GAME_ID);
+        game.setClock(600);
+        game.setTeamA(new Team());
+        game.setTeamB(new Team());
+    }
+
+    @Test
+    public void clockCorrectionIsNotUndoneAfterTheClockRan() throws Exception {
+        final long beforeCorrection = System.currentTimeMillis();
+        Thread.sleep(5);
+
+        // The scorer corrects the clock from 600 to 601
+        final GameState start = GameState.of(game);
+        game.setClock(601);
+        commandLog.record("clock.inc", start, game);
+
+        Thread.sleep(5);
+        final long afterCorrection = System.currentTimeMillis();
+        Thread.sleep(5);
+
+        // The clock runs down to 300 and is stopped
+        final GameState running = GameState.of(game);
+        game.setClock(300);
+        commandLog.recordPlayed("clock.stop", running, game);
+
+        try {
+            commandLog.undo(GAME_ID, false, 300);
+            fail("The undo gives back five minutes of play");
+        } catch (IllegalStateException expected) {
+            // The cursor didn't move
+            assertNull(commandLog.redo(GAME_ID, false, 300));
+        }
+
+        // The replay folds the stop of the clock
+        assertEquals(300, commandLog.replay(GameState.of(game), System.currentTimeMillis()).get(Field.CLOCK));
+        assertEquals(601, commandLog.replay(GameState.of(game), afterCorrection).get(Field.CLOCK));
+        assertEquals(600, commandLog.replay(GameState.of(game), beforeCorrection).get(Field.CLOCK));
+    }
+
+    @Test
+    public void clockCorrectionIsUndoneWhileTheClockShowsIt() {
+        final GameState start = GameState.of(game);
+        game.setClock(601);
+        commandLog.record("clock.inc", start, game);
+
+        try {
+            commandLog.undo(GAME_ID, true, 601);
+            fail("The clock is running");
+        } catch (IllegalStateException expected) {
+        }
+
+        final GameState state = GameState.of(game);
+        commandLog.undo(GAME_ID, false, 601).undo(state);
+        assertEquals(600, state.get(Field.CLOCK));
+
+        // A redo needs the clock the correction found
+        try {
+            commandLog.redo(GAME_ID, false, 590);
+            fail("The clock ran since the undo");
+        } catch (IllegalStateException expected) {
+        }
+
+        commandLog.redo(GAME_ID, false, 600).redo(state);
+        assertEquals(601, state.get(Field.CLOCK));
+    }
+
+    @Test
+    public void scoreIsUndoneAfterTheClockRan() {
+        final GameState running = GameState.of(game);
+        game.setClock(300);
+        commandLog.recordPlayed("clock.stop", running, game);
+
+        final GameState before = GameState.of(game);
+        game.getTeamA().setScore(2);
+        commandLog.record("score.inc", before, game);
+
+        final GameState state = GameState.of(game);
+        final GameCommand command = commandLog.undo(GAME_ID, false, 300);
+        assertEquals("score.inc", command.getName());
+        command.undo(state);
+
+        assertEquals(0, state.get(Field.HOME_SCORE));
+        assertEquals(300, state.get(Field.CLOCK));
+
+        // The stop of the clock is never undone
+        assertNull(commandLog.undo(GAME_ID, false, 300));
+    }
+}